@@ -0,0 +1,260 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Hashes every regular file under a directory on a work-stealing pool.
+ * Each worker thread keeps its own FileHasher (sponge and read buffer), so nothing is
+ * shared between threads while hashing. Results come back in sorted path order, no
+ * matter which worker finished first.
+ */
+public class BatchHasher {
+//********************************* Constants *********************************\\
+    /**
+     * Number of files below which a task stops splitting and hashes them itself.
+     */
+    private static final int LEAF_FILES = 4;
+    /**
+     * One FileHasher per worker thread.
+     */
+    private static final ThreadLocal<FileHasher> HASHERS = ThreadLocal.withInitial(FileHasher::new);
+    /**
+     * Private constructor.
+     */
+    private BatchHasher() {}
+    /**
+     * Hash every regular file under a directory using all available processors.
+     *
+     * @param root   the directory to walk.
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @return       relative path to digest, in sorted path order.
+     * @throws IOException if the tree cannot be walked or a file cannot be read.
+     */
+    public static Map<Path, byte[]> hashTree(Path root, int suffix) throws IOException {
+        return hashTree(root, suffix, Runtime.getRuntime().availableProcessors());
+    }
+    /**
+     * Hash every regular file under a directory.
+     *
+     * @param root        the directory to walk.
+     * @param suffix      desired output length in bits (one of 224, 256, 384, 512)
+     * @param parallelism the number of worker threads.
+     * @return            relative path to digest, in sorted path order.
+     * @throws IOException if the tree cannot be walked or a file cannot be read.
+     */
+    public static Map<Path, byte[]> hashTree(Path root, int suffix, int parallelism) throws IOException {
+        List<Path> files = list(root);
+        byte[][] digests = run(new HashTask(files, suffix, digests(files), 0, files.size(), null, null, null),
+                               parallelism);
+        return toMap(root, files, digests);
+    }
+    /**
+     * Hash every regular file under a directory, reusing the digests of files whose size,
+     * mtime and inode match the index, then replace the index with one for the current tree.
+     *
+     * @param root   the directory to walk.
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param index  the index file (created if missing).
+     * @return       relative path to digest, in sorted path order.
+     * @throws IOException if the tree cannot be walked, a file cannot be read or the index
+     *                     cannot be written.
+     */
+    public static Map<Path, byte[]> hashTree(Path root, int suffix, Path index) throws IOException {
+        long sweepStart = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        List<Path> files = list(root);
+        Path self = index.toAbsolutePath().normalize();
+        files.removeIf(file -> file.toAbsolutePath().normalize().equals(self));
+        HashIndex previous = HashIndex.open(index, suffix);
+        List<String> names = new ArrayList<>(files.size());
+        for (Path file : files) {
+            names.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+        }
+        long[][] stamps = new long[files.size()][];
+        byte[][] digests = run(new HashTask(files, suffix, digests(files), 0, files.size(),
+                                            names, stamps, previous),
+                               Runtime.getRuntime().availableProcessors());
+        HashIndex.write(index, suffix, sweepStart, names, Arrays.asList(stamps), Arrays.asList(digests));
+        return toMap(root, files, digests);
+    }
+    /**
+     * Write a manifest with one "digest  path" line per file, in the map's order.
+     *
+     * @param digests relative path to digest.
+     * @param out     the destination.
+     * @throws IOException on a write error.
+     */
+    public static void writeManifest(Map<Path, byte[]> digests, Writer out) throws IOException {
+        HexFormat hex = HexFormat.of();
+        for (Map.Entry<Path, byte[]> entry : digests.entrySet()) {
+            out.write(hex.formatHex(entry.getValue()));
+            out.write("  ");
+            out.write(entry.getKey().toString());
+            out.write(System.lineSeparator());
+        }
+        out.flush();
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Every regular file under a directory, in sorted order.
+     *
+     * @param root the directory to walk.
+     * @return     the files.
+     * @throws IOException if the tree cannot be walked.
+     */
+    private static List<Path> list(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+    /**
+     * Output slots for a file list.
+     *
+     * @param files the files.
+     * @return      one empty slot per file.
+     */
+    private static byte[][] digests(List<Path> files) {
+        return new byte[files.size()][];
+    }
+    /**
+     * Run a hash task on a new pool.
+     *
+     * @param task        the root task.
+     * @param parallelism the number of worker threads.
+     * @return            the task's digests.
+     * @throws IOException if a file cannot be read.
+     */
+    private static byte[][] run(HashTask task, int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw new IOException(e.getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return task.digests;
+    }
+    /**
+     * Pair files with their digests.
+     *
+     * @param root    the walked directory.
+     * @param files   the files.
+     * @param digests the digest of each file.
+     * @return        relative path to digest, in the files' order.
+     */
+    private static Map<Path, byte[]> toMap(Path root, List<Path> files, byte[][] digests) {
+        Map<Path, byte[]> result = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            result.put(root.relativize(files.get(i)), digests[i]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+    /**
+     * Hashes a slice of the file list, splitting it in two while it is large.
+     */
+    private static final class HashTask extends RecursiveAction {
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * All files of the batch.
+         */
+        private final List<Path> files;
+        /**
+         * SHA-3 suffix.
+         */
+        private final int suffix;
+        /**
+         * Output slots, one per file.
+         */
+        private final byte[][] digests;
+        /**
+         * First index of the slice.
+         */
+        private final int from;
+        /**
+         * End index of the slice (exclusive).
+         */
+        private final int to;
+        /**
+         * Relative paths used as index keys, or null without an index.
+         */
+        private final List<String> names;
+        /**
+         * Output slots for the metadata of each file, or null without an index.
+         */
+        private final long[][] stamps;
+        /**
+         * The previous index, or null.
+         */
+        private final HashIndex index;
+        /**
+         * Constructor.
+         *
+         * @param files   all files of the batch.
+         * @param suffix  SHA-3 suffix.
+         * @param digests output slots, one per file.
+         * @param from    first index of the slice.
+         * @param to      end index of the slice (exclusive).
+         * @param names   relative paths used as index keys, or null.
+         * @param stamps  output slots for the metadata of each file, or null.
+         * @param index   the previous index, or null.
+         */
+        HashTask(List<Path> files, int suffix, byte[][] digests, int from, int to,
+                 List<String> names, long[][] stamps, HashIndex index) {
+            this.files = files;
+            this.suffix = suffix;
+            this.digests = digests;
+            this.from = from;
+            this.to = to;
+            this.names = names;
+            this.stamps = stamps;
+            this.index = index;
+        }
+        /**
+         * Hash the slice, or fork its two halves.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_FILES) {
+                FileHasher hasher = HASHERS.get();
+                for (int i = from; i < to; i++) {
+                    try {
+                        if (index != null) {
+                            // Stamp before hashing, so a change during the read is caught next time.
+                            stamps[i] = HashIndex.stamp(files.get(i));
+                            digests[i] = index.lookup(names.get(i), stamps[i]);
+                            if (digests[i] != null) {
+                                continue;
+                            }
+                        }
+                        digests[i] = hasher.hash(files.get(i), suffix, null);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Error with file path: " + files.get(i) + ": " + e.getMessage(), e);
+                    }
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HashTask(files, suffix, digests, from, mid, names, stamps, index),
+                          new HashTask(files, suffix, digests, mid, to, names, stamps, index));
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import javax.crypto.AEADBadTagException;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * The workloads of the JMH benchmarks (jmh/java/sha3/jmh), built by name with their inputs.
+ * JMH refuses benchmark classes in the default package, and a class in a named package cannot
+ * refer to one in the default package, so the benchmarks load this class reflectively once per
+ * trial and then only call IntSupplier.getAsInt, which the JIT inlines like a direct call.
+ * Every workload returns a value derived from its result for JMH to consume.
+ */
+public final class BenchmarkWorkloads {
+//********************************* Constants *********************************\\
+    /**
+     * Passphrase of the container workloads.
+     */
+    private static final byte[] PASSWORD = "benchmark".getBytes();
+    /**
+     * Private constructor.
+     */
+    private BenchmarkWorkloads() {}
+    /**
+     * Build a workload over an input of the given size.
+     *   keccakF.unrolled, .reference, .interleaved, .vector  one permutation call (size ignored)
+     *   sha3-224 ... sha3-512     init, absorb the input, digest
+     *   jdk.sha3-224 ... 512      MessageDigest.getInstance("SHA3-...") on the same input
+     *   shake128, shake256        init, absorb the input, squeeze 32 bytes
+     *   squeeze.shake128, 256     init, absorb 64 bytes, squeeze size bytes
+     *   mac.shake256              keyed SHAKE256 MAC of the input
+     *   encrypt, decrypt          EncryptedContainer with the default chunk size and KDF cost
+     *
+     * @param name the workload.
+     * @param size the input size in bytes.
+     * @return     the workload.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static IntSupplier create(String name, int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        byte[] out = new byte[64];
+        if (name.startsWith("keccakF.")) {
+            return permutation(name.substring("keccakF.".length()));
+        } else if (name.startsWith("jdk.sha3-")) {
+            MessageDigest jdk = messageDigest("SHA3-" + name.substring("jdk.sha3-".length()));
+            return () -> {
+                jdk.update(data);
+                return jdk.digest()[0];
+            };
+        } else if (name.startsWith("sha3-")) {
+            int suffix = Integer.parseInt(name.substring("sha3-".length()));
+            byte[] digest = new byte[suffix / 8];
+            return () -> {
+                sponge.init(suffix);
+                sponge.absorb(data);
+                return sponge.digest(digest)[0];
+            };
+        } else if (name.startsWith("shake")) {
+            int suffix = Integer.parseInt(name.substring("shake".length()));
+            return () -> {
+                sponge.init(suffix);
+                sponge.absorb(data);
+                return sponge.squeeze(out, 0, 32)[0];
+            };
+        } else if (name.startsWith("squeeze.shake")) {
+            int suffix = Integer.parseInt(name.substring("squeeze.shake".length()));
+            return () -> {
+                sponge.init(suffix);
+                sponge.absorb(out);
+                return sponge.squeeze(data, 0, size)[0];
+            };
+        } else if (name.equals("mac.shake256")) {
+            return () -> {
+                sponge.init(256);
+                sponge.absorb(PASSWORD);
+                sponge.absorb(data);
+                return sponge.squeeze(out, 0, 32)[0];
+            };
+        } else if (name.equals("encrypt") || name.equals("decrypt")) {
+            return container(name.equals("encrypt"), data);
+        }
+        throw new IllegalArgumentException("Unknown workload: " + name);
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * One permutation of a single or interleaved state.
+     *
+     * @param engine unrolled, reference, interleaved or vector.
+     * @return       the workload.
+     * @throws IllegalStateException if the vector engine is asked for but cannot be loaded.
+     */
+    private static IntSupplier permutation(String engine) {
+        switch (engine) {
+            case "unrolled":
+            case "reference":
+                KeccakEngine single = engine.equals("unrolled") ? new KeccakUnrolled() : new KeccakReference();
+                long[] state = new long[25];
+                return () -> {
+                    single.permute(state);
+                    return (int) state[0];
+                };
+            case "interleaved":
+            case "vector":
+                KeccakMultiEngine multi = engine.equals("interleaved")
+                        ? new KeccakInterleaved(KeccakEngines.SCALAR_WAYS) : KeccakEngines.newVector();
+                if (multi == null) {
+                    throw new IllegalStateException("KeccakVector is not built or "
+                            + "jdk.incubator.vector is not loaded");
+                }
+                long[] states = new long[25 * multi.ways()];
+                return () -> {
+                    multi.permute(states);
+                    return (int) states[0];
+                };
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+    }
+    /**
+     * Encryption or decryption of a whole container in memory.
+     *
+     * @param encrypt true to encrypt the data, false to decrypt a container of it.
+     * @param data    the plaintext.
+     * @return        the workload.
+     */
+    private static IntSupplier container(boolean encrypt, byte[] data) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length + 4096);
+        try {
+            EncryptedContainer.encrypt(new ByteArrayInputStream(data), buffer, PASSWORD);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] input = encrypt ? data : buffer.toByteArray();
+        return () -> {
+            buffer.reset();
+            try {
+                if (encrypt) {
+                    EncryptedContainer.encrypt(new ByteArrayInputStream(input), buffer, PASSWORD);
+                } else {
+                    EncryptedContainer.decrypt(new ByteArrayInputStream(input), buffer, PASSWORD);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (AEADBadTagException e) {
+                throw new IllegalStateException(e);
+            }
+            return buffer.size();
+        };
+    }
+    /**
+     * A JDK MessageDigest.
+     *
+     * @param algorithm the algorithm name.
+     * @return          the digest.
+     */
+    private static MessageDigest messageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * cSHAKE128/256 from NIST SP 800-185, the customizable SHAKE behind KMAC, TupleHash and ParallelHash.
+ * The bytepad'ed function-name and customization prefix costs at least one permutation, and
+ * more for long strings, so it is absorbed once and kept as a sponge snapshot: an instance
+ * holds its own, and init keeps the most recently used ones in a small shared cache. Starting
+ * a hash is then a 200-byte state copy, the same as plain SHAKE. An instance is not
+ * thread-safe; give each thread its own, or share the prefix state with copy().
+ */
+public final class CSHAKE {
+//********************************* Constants *********************************\\
+    /**
+     * cSHAKE domain separation bits followed by the first padding bit.
+     */
+    static final long CSHAKE_PAD = 0x04L;
+    /**
+     * Largest number of cached prefix states.
+     */
+    static final int MAX_PREFIXES = 64;
+    /**
+     * Prefix states in least-recently-used order, keyed by suffix, N and S.
+     */
+    private static final LinkedHashMap<List<Object>, SHA3SHAKE> PREFIXES = new LinkedHashMap<>(16, 0.75f, true) {
+        /**
+         * Drop the least-recently-used prefix once the cache is full.
+         *
+         * @param eldest the least-recently-used prefix.
+         * @return       true if it should be removed.
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, SHA3SHAKE> eldest) {
+            return size() > MAX_PREFIXES;
+        }
+    };
+    /**
+     * Security level (128 or 256).
+     */
+    private final int suffix;
+    /**
+     * Sponge with the prefix absorbed (read-only, may be shared with copies).
+     */
+    private final SHA3SHAKE prefix;
+    /**
+     * Working sponge, restored from the prefix for each message.
+     */
+    private final SHA3SHAKE work;
+    /**
+     * Constructor: absorb the function-name and customization prefix.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param N      function-name string
+     * @param S      customization string
+     */
+    public CSHAKE(int suffix, byte[] N, byte[] S) {
+        this.suffix = suffix;
+        this.prefix = absorbPrefix(suffix, N, S);
+        this.work = prefix.copy();
+    }
+    /**
+     * Constructor: share the prefix state of another instance.
+     *
+     * @param other the instance to copy.
+     */
+    private CSHAKE(CSHAKE other) {
+        this.suffix = other.suffix;
+        this.prefix = other.prefix;
+        this.work = other.prefix.copy();
+    }
+    /**
+     * A new instance with the same function name and customization string, e.g. for another
+     * thread. The prefix state is shared read-only, so this costs one 200-byte copy.
+     *
+     * @return the copy.
+     */
+    public CSHAKE copy() {
+        return new CSHAKE(this);
+    }
+    /**
+     * Security level of this instance.
+     *
+     * @return 128 or 256.
+     */
+    public int suffix() {
+        return suffix;
+    }
+    /**
+     * Restore a sponge to the state right after this instance's prefix, ready to absorb a
+     * message and squeeze, without allocating.
+     *
+     * @param sponge the sponge to initialize.
+     * @return       the sponge.
+     */
+    public SHA3SHAKE init(SHA3SHAKE sponge) {
+        sponge.copyFrom(prefix);
+        return sponge;
+    }
+    /**
+     * Compute cSHAKE on input X with an output bit length L.
+     *
+     * @param X data to be hashed
+     * @param L desired output length in bits (must be a multiple of 8)
+     * @return  the output, L / 8 bytes.
+     */
+    public byte[] hash(byte[] X, int L) {
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8");
+        }
+        return hash(X, 0, X.length, new byte[L / 8]);
+    }
+    /**
+     * Compute cSHAKE on part of a buffer, filling the whole output buffer.
+     *
+     * @param X   data to be hashed
+     * @param off index of the first byte
+     * @param len number of bytes
+     * @param out output buffer
+     * @return    the out buffer.
+     */
+    public byte[] hash(byte[] X, int off, int len, byte[] out) {
+        work.copyFrom(prefix);
+        work.absorb(X, off, len);
+        return work.squeeze(out, 0, out.length);
+    }
+    /**
+     * Initialize a sponge as cSHAKE and absorb the function-name and customization prefix.
+     * With both strings empty this is plain SHAKE, as the standard requires. The prefix state
+     * is taken from the shared cache when the same strings were used recently.
+     *
+     * @param sponge the sponge to initialize.
+     * @param suffix security level (either 128 or 256)
+     * @param N      function-name string
+     * @param S      customization string
+     */
+    public static void init(SHA3SHAKE sponge, int suffix, byte[] N, byte[] S) {
+        if (N.length == 0 && S.length == 0) {
+            validSuffix(suffix);
+            sponge.init(suffix);
+            return;
+        }
+        List<Object> key = List.of(suffix, ByteBuffer.wrap(N), ByteBuffer.wrap(S));
+        SHA3SHAKE cached;
+        synchronized (PREFIXES) {
+            cached = PREFIXES.get(key);
+        }
+        if (cached == null) {
+            cached = absorbPrefix(suffix, N, S);
+            synchronized (PREFIXES) {
+                PREFIXES.put(List.of(suffix, ByteBuffer.wrap(N.clone()), ByteBuffer.wrap(S.clone())), cached);
+            }
+        }
+        sponge.copyFrom(cached);
+    }
+    /**
+     * Compute cSHAKE-<128,256> on input X with an output bit length L.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param X      data to be hashed
+     * @param L      desired output length in bits (must be a multiple of 8)
+     * @param N      function-name string
+     * @param S      customization string
+     * @return       the output, L / 8 bytes.
+     */
+    public static byte[] cSHAKE(int suffix, byte[] X, int L, byte[] N, byte[] S) {
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        init(sponge, suffix, N, S);
+        sponge.absorb(X);
+        return sponge.squeeze(L / 8);
+    }
+    /**
+     * Compute cSHAKE-<128,256> with a text customization string and no function name.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param X      data to be hashed
+     * @param L      desired output length in bits (must be a multiple of 8)
+     * @param S      customization string
+     * @return       the output, L / 8 bytes.
+     */
+    public static byte[] cSHAKE(int suffix, byte[] X, int L, String S) {
+        return cSHAKE(suffix, X, L, new byte[0], S.getBytes(StandardCharsets.UTF_8));
+    }
+    /**
+     * Check the implementation against the NIST SP 800-185 sample values.
+     *
+     * @return true if every sample matches.
+     */
+    public static boolean selfTest() {
+        HexFormat hex = HexFormat.of();
+        byte[] X = hex.parseHex("00010203");
+        byte[] S = "Email Signature".getBytes(StandardCharsets.US_ASCII);
+        return Arrays.equals(cSHAKE(128, X, 256, new byte[0], S), hex.parseHex(
+                        "c1c36925b6409a04f1b504fcbca9d82b4017277cb5ed2b2065fc1d3814d5aaf5"))
+                && Arrays.equals(new CSHAKE(256, new byte[0], S).hash(X, 512), hex.parseHex(
+                        "d008828e2b80ac9d2218ffee1d070c48b8e4c87bff32c9699d5b6896eee0edd1"
+                        + "64020e2be0560858d9c00c037e34a96937c561a74c412bb4c746469527281c8c"));
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Absorb a function-name and customization prefix into a new sponge.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param N      function-name string
+     * @param S      customization string
+     * @return       the sponge.
+     */
+    private static SHA3SHAKE absorbPrefix(int suffix, byte[] N, byte[] S) {
+        validSuffix(suffix);
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        if (N.length == 0 && S.length == 0) {
+            sponge.init(suffix);
+            return sponge;
+        }
+        sponge.init(suffix, SHA3SHAKE.KECCAKF_ROUNDS, CSHAKE_PAD);
+        SP800185.bytepad(sponge, sponge.rate(), SP800185.encodeString(N), SP800185.encodeString(S));
+        return sponge;
+    }
+    /**
+     * Check a security level.
+     *
+     * @param suffix security level.
+     */
+    private static void validSuffix(int suffix) {
+        if (suffix != 128 && suffix != 256) {
+            throw new IllegalArgumentException("Invalid suffix.");
+        }
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.crypto.AEADBadTagException;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Runs the chunks of a stream through a fixed sequence of stages, each on its own thread,
+ * so that reading chunk i + 2, generating the keystream for chunk i + 1 and writing chunk i
+ * overlap and a stream moves at the pace of its slowest stage rather than the sum of them.
+ * Chunks travel between stages through bounded queues and come from a pool of at most DEPTH
+ * reusable buffers, allocated on first use; a stage that falls behind stalls the ones before
+ * it once the pool is drained, so memory stays bounded by DEPTH chunks. The first stage
+ * decides where the stream ends by marking a chunk as the last one.
+ * Stages block on their queues rather than poll them. If any stage fails, or the caller is
+ * interrupted, every other stage thread is interrupted: one waiting on a queue stops at once,
+ * and one blocked in I/O on an interruptible channel (Files.newInputStream, Channels streams)
+ * is woken, which closes that channel. The failure is rethrown to the caller once every stage
+ * has stopped.
+ */
+final class ChunkPipeline {
+//********************************* Constants *********************************\\
+    /**
+     * Largest number of chunks in flight.
+     */
+    static final int DEPTH = 4;
+    /**
+     * Threads running the stages.
+     */
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "chunk-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Private constructor.
+     */
+    private ChunkPipeline() {}
+    /**
+     * One step applied to every chunk, in order.
+     */
+    @FunctionalInterface
+    interface Stage {
+        /**
+         * Process a chunk.
+         *
+         * @param chunk the chunk.
+         * @throws IOException          on a read or write error.
+         * @throws AEADBadTagException  if a chunk fails verification.
+         */
+        void apply(Chunk chunk) throws IOException, AEADBadTagException;
+    }
+    /**
+     * A chunk in flight, with its buffers.
+     */
+    static final class Chunk {
+        /**
+         * The chunk body.
+         */
+        final byte[] data;
+        /**
+         * Keystream for the body.
+         */
+        final byte[] keys;
+        /**
+         * The chunk's tag.
+         */
+        final byte[] tag;
+        /**
+         * The final tag of the stream (only meaningful on the last chunk).
+         */
+        final byte[] finalTag;
+        /**
+         * Position of the chunk in the stream, set by the pipeline.
+         */
+        long index;
+        /**
+         * Length of the body in bytes.
+         */
+        int n;
+        /**
+         * The chunk's length word.
+         */
+        int word;
+        /**
+         * True on the last chunk of the stream.
+         */
+        boolean last;
+        /**
+         * Constructor.
+         *
+         * @param size   the largest body length.
+         * @param tagLen the tag length.
+         */
+        Chunk(int size, int tagLen) {
+            data = new byte[size];
+            keys = new byte[size];
+            tag = new byte[tagLen];
+            finalTag = new byte[tagLen];
+        }
+    }
+    /**
+     * Run every chunk of a stream through the stages and wait for the last one to leave the
+     * last stage.
+     *
+     * @param size   the largest body length of a chunk.
+     * @param tagLen the tag length.
+     * @param stages the stages, in order; the first one must eventually mark a chunk as last.
+     * @throws IOException          if a stage fails with one, or the caller is interrupted.
+     * @throws AEADBadTagException  if a stage rejects a chunk.
+     */
+    static void run(int size, int tagLen, Stage... stages) throws IOException, AEADBadTagException {
+        // queues[k] carries the output of stage k; the last one is the pool of free chunks.
+        List<BlockingQueue<Chunk>> queues = new ArrayList<>();
+        for (int k = 0; k < stages.length; k++) {
+            queues.add(new ArrayBlockingQueue<>(DEPTH));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // threads[k] runs stage k while it is non-null; it is only interrupted while it does.
+        Thread[] threads = new Thread[stages.length];
+        CountDownLatch done = new CountDownLatch(stages.length);
+        for (int k = 0; k < stages.length; k++) {
+            int stage = k;
+            POOL.execute(() -> {
+                synchronized (threads) {
+                    threads[stage] = Thread.currentThread();
+                }
+                try {
+                    if (failure.get() != null) {
+                        return;
+                    } else if (stage == 0) {
+                        source(stages[0], queues.get(stages.length - 1), queues.get(0), size, tagLen);
+                    } else {
+                        relay(stages[stage], queues.get(stage - 1), queues.get(stage));
+                    }
+                } catch (Throwable t) {
+                    fail(failure, t, threads);
+                } finally {
+                    synchronized (threads) {
+                        threads[stage] = null;
+                    }
+                    // Drop an interrupt meant for this stage before the thread returns to the pool.
+                    Thread.interrupted();
+                    done.countDown();
+                }
+            });
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                // Stop the stages, but wait for them: they may still be using the caller's streams.
+                fail(failure, new InterruptedIOException("Interrupted while processing the stream."), threads);
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t instanceof AEADBadTagException) {
+            throw (AEADBadTagException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IOException(t);
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Loop of the first stage: take a free chunk (allocating one while fewer than DEPTH
+     * exist), number it, fill it and pass it on, until a chunk is marked last.
+     *
+     * @param stage   the first stage.
+     * @param free    chunks returned by the last stage.
+     * @param out     queue to the second stage.
+     * @param size    the largest body length.
+     * @param tagLen  the tag length.
+     * @throws Exception if the stage fails or the thread is interrupted.
+     */
+    private static void source(Stage stage, BlockingQueue<Chunk> free, BlockingQueue<Chunk> out,
+                               int size, int tagLen) throws Exception {
+        int created = 0;
+        for (long index = 0; ; index++) {
+            Chunk chunk = free.poll();
+            if (chunk == null && created < DEPTH) {
+                chunk = new Chunk(size, tagLen);
+                created++;
+            } else if (chunk == null) {
+                chunk = free.take();
+            }
+            chunk.index = index;
+            chunk.last = false;
+            stage.apply(chunk);
+            boolean last = chunk.last;
+            out.put(chunk);
+            if (last) {
+                return;
+            }
+        }
+    }
+    /**
+     * Loop of a later stage: take each chunk from the previous stage, process it and pass it
+     * on, until the last chunk has gone through.
+     *
+     * @param stage   the stage.
+     * @param in      queue from the previous stage.
+     * @param out     queue to the next stage (the free pool after the last stage).
+     * @throws Exception if the stage fails or the thread is interrupted.
+     */
+    private static void relay(Stage stage, BlockingQueue<Chunk> in, BlockingQueue<Chunk> out) throws Exception {
+        while (true) {
+            Chunk chunk = in.take();
+            stage.apply(chunk);
+            boolean last = chunk.last;
+            out.put(chunk);
+            if (last) {
+                return;
+            }
+        }
+    }
+    /**
+     * Record the first failure and interrupt every other stage still running, so that stages
+     * waiting on a queue, or on interruptible I/O, stop instead of waiting for chunks that
+     * will never come. Later failures, such as the interrupts themselves, are ignored.
+     *
+     * @param failure the first failure of any stage.
+     * @param t       this failure.
+     * @param threads the threads running the stages, null where a stage is not running.
+     */
+    private static void fail(AtomicReference<Throwable> failure, Throwable t, Thread[] threads) {
+        if (!failure.compareAndSet(null, t)) {
+            return;
+        }
+        synchronized (threads) {
+            for (Thread thread : threads) {
+                if (thread != null && thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+}
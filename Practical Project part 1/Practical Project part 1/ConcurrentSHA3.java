@@ -0,0 +1,168 @@
+import java.nio.ByteBuffer;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Thread-safe, stateless SHA-3/SHAKE facade for request threads.
+ * Each thread hashes on its own sponge, created on first use and reset in place by init,
+ * so once a thread is warmed up a call with a caller-supplied output buffer allocates nothing.
+ * The sponge is lent out for the length of a call, or between borrow and release, and wiped
+ * when it comes back: a nested call on the same thread gets a fresh sponge instead of
+ * re-initializing one still in use, and no key or message stays in the thread's state.
+ */
+public final class ConcurrentSHA3 {
+    /**
+     * One sponge per thread, in a one-element slot that is empty while the sponge is lent out.
+     */
+    private static final ThreadLocal<SHA3SHAKE[]> SPONGE = ThreadLocal.withInitial(() -> new SHA3SHAKE[1]);
+    /**
+     * Private constructor.
+     */
+    private ConcurrentSHA3() {}
+    /**
+     * Compute SHA-3-<224,256,384,512> of a message.
+     *
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param in     data to be hashed
+     * @param out    hash value buffer of suffix / 8 bytes (if null, it is allocated)
+     * @return       the out buffer containing the hash value.
+     */
+    public static byte[] hash(int suffix, byte[] in, byte[] out) {
+        return hash(suffix, in, 0, in.length, out);
+    }
+    /**
+     * Compute SHA-3-<224,256,384,512> of part of a buffer.
+     *
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param in     data to be hashed
+     * @param off    index of the first byte
+     * @param len    number of bytes
+     * @param out    hash value buffer of suffix / 8 bytes (if null, it is allocated)
+     * @return       the out buffer containing the hash value.
+     */
+    public static byte[] hash(int suffix, byte[] in, int off, int len, byte[] out) {
+        byte[] output = out == null ? new byte[suffix / 8] : out;
+        validSha3(suffix, output.length);
+        SHA3SHAKE sponge = take(suffix);
+        try {
+            sponge.absorb(in, off, len);
+            return sponge.digest(output);
+        } finally {
+            release(sponge);
+        }
+    }
+    /**
+     * Compute SHA-3-<224,256,384,512> of the remaining bytes of a buffer.
+     * The buffer's position is advanced to its limit.
+     *
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param in     data to be hashed
+     * @param out    hash value buffer of suffix / 8 bytes (if null, it is allocated)
+     * @return       the out buffer containing the hash value.
+     */
+    public static byte[] hash(int suffix, ByteBuffer in, byte[] out) {
+        byte[] output = out == null ? new byte[suffix / 8] : out;
+        validSha3(suffix, output.length);
+        SHA3SHAKE sponge = take(suffix);
+        try {
+            sponge.absorb(in);
+            return sponge.digest(output);
+        } finally {
+            release(sponge);
+        }
+    }
+    /**
+     * Compute SHAKE-<128,256> of a message, filling the whole output buffer.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param in     data to be hashed
+     * @param out    output buffer; its length is the output length
+     * @return       the out buffer.
+     */
+    public static byte[] shake(int suffix, byte[] in, byte[] out) {
+        SHA3SHAKE sponge = borrow(suffix);
+        try {
+            sponge.absorb(in);
+            return sponge.squeeze(out, 0, out.length);
+        } finally {
+            release(sponge);
+        }
+    }
+    /**
+     * Compute the keyed SHAKE MAC used by Main: SHAKE-<128,256>(key || message).
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param key    the key (passphrase bytes)
+     * @param in     data to be authenticated
+     * @param out    MAC buffer; its length is the MAC length
+     * @return       the out buffer.
+     */
+    public static byte[] mac(int suffix, byte[] key, byte[] in, byte[] out) {
+        SHA3SHAKE sponge = borrow(suffix);
+        try {
+            sponge.absorb(key);
+            sponge.absorb(in);
+            return sponge.squeeze(out, 0, out.length);
+        } finally {
+            release(sponge);
+        }
+    }
+    /**
+     * Borrow the calling thread's sponge, initialized as SHAKE, for streaming input of unknown
+     * length; a fresh one if it is already lent out. It belongs to the caller until it is given
+     * back with release, which should be done in a finally block.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @return       the initialized sponge.
+     */
+    public static SHA3SHAKE borrow(int suffix) {
+        if (suffix != 128 && suffix != 256) {
+            throw new IllegalArgumentException("Invalid suffix.");
+        }
+        return take(suffix);
+    }
+    /**
+     * Give back a sponge from borrow. Its state is wiped, so a key absorbed into it does not
+     * outlive the call, and it must not be used again.
+     *
+     * @param sponge the sponge.
+     */
+    public static void release(SHA3SHAKE sponge) {
+        sponge.init(256);
+        SHA3SHAKE[] slot = SPONGE.get();
+        if (slot[0] == null) {
+            slot[0] = sponge;
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Take the calling thread's sponge out of its slot, or create one if it is lent out.
+     *
+     * @param suffix the suffix to initialize it with.
+     * @return       the initialized sponge.
+     */
+    private static SHA3SHAKE take(int suffix) {
+        SHA3SHAKE[] slot = SPONGE.get();
+        SHA3SHAKE sponge = slot[0];
+        if (sponge == null) {
+            sponge = new SHA3SHAKE();
+        } else {
+            slot[0] = null;
+        }
+        sponge.init(suffix);
+        return sponge;
+    }
+    /**
+     * Check a SHA-3 suffix and its output buffer.
+     *
+     * @param suffix the suffix value.
+     * @param len    the length of the output buffer.
+     */
+    private static void validSha3(int suffix, int len) {
+        if (suffix != 224 && suffix != 256 && suffix != 384 && suffix != 512) {
+            throw new IllegalArgumentException("Invalid suffix.");
+        }
+        if (len != suffix / 8) {
+            throw new IllegalArgumentException("Invalid buffer length.");
+        }
+    }
+}
@@ -0,0 +1,426 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.AEADBadTagException;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Versioned, chunked authenticated-encryption container around SHA3SHAKE.
+ *
+ * Layout (all integers big-endian):
+ *   header  magic "S3SC" | version (1) | log2 of the chunk size (1) | nonce (16)
+ *           | log2 of the KDF memory in KiB (1) | KDF iterations (1) | salt (16)
+ *   chunk*  flags and length (4) | ciphertext (length) | tag (32)
+ *   final   tag (32)
+ *
+ * The high bit of a chunk's length word marks the last chunk. Every chunk is encrypted with
+ * the counter-mode Keystream at its own offset and carries the tag
+ * SHA3-256(macKey || header || index || length word || ciphertext), so it can be checked and
+ * released as soon as it arrives. The final tag, SHA3-256(macKey || header || all chunk tags
+ * || total length), closes the stream.
+ *
+ * Both directions run as a ChunkPipeline: reading, keystream generation (on the fork-join
+ * pool), XOR and tagging, and writing each run on their own thread and overlap across chunks.
+ * Memory use is bounded by ChunkPipeline.DEPTH chunks, each with its keystream buffer,
+ * however large the input is.
+ *
+ * The encryption and MAC keys come from the passphrase through the memory-hard SpongeKDF,
+ * whose cost parameters and salt travel in the header; derived keys are kept in KeyCache.
+ * The header is not authenticated until the keys exist, so decryption refuses a KDF cost above
+ * its limits before deriving anything.
+ * Version 1 containers, whose header ends after the nonce and whose keys are
+ * SHAKE256(passphrase), can still be decrypted.
+ */
+public final class EncryptedContainer {
+//********************************* Constants *********************************\\
+    /**
+     * File signature.
+     */
+    private static final byte[] MAGIC = "S3SC".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Current format version.
+     */
+    static final int VERSION = 2;
+    /**
+     * First format version, with unsalted SHAKE256 keys.
+     */
+    static final int VERSION_1 = 1;
+    /**
+     * Default log2 of the chunk size (1 MiB).
+     */
+    static final int DEFAULT_CHUNK_SHIFT = 20;
+    /**
+     * Smallest and largest accepted log2 of the chunk size.
+     */
+    private static final int MIN_CHUNK_SHIFT = 12, MAX_CHUNK_SHIFT = 24;
+    /**
+     * Nonce length in bytes.
+     */
+    static final int NONCE_LEN = 16;
+    /**
+     * Header length in bytes of a version 1 container.
+     */
+    static final int V1_HEADER_LEN = MAGIC.length + 2 + NONCE_LEN;
+    /**
+     * Header length in bytes.
+     */
+    static final int HEADER_LEN = V1_HEADER_LEN + 2 + SpongeKDF.SALT_LEN;
+    /**
+     * Tag length in bytes.
+     */
+    static final int TAG_LEN = 32;
+    /**
+     * Marks the last chunk in a length word.
+     */
+    private static final int FINAL_FLAG = 0x80000000;
+    /**
+     * Largest KDF memory cost (log2 of KiB) decrypt accepts by default: -Dsha3.kdf.maxMemory,
+     * else the larger of SpongeKDF's default and -Dsha3.kdf.memory, so a process can always
+     * open the containers it writes.
+     */
+    static final int DECRYPT_MAX_MEMORY_SHIFT = Integer.getInteger("sha3.kdf.maxMemory",
+            Math.max(SpongeKDF.DEFAULT_MEMORY_SHIFT,
+                     Integer.getInteger("sha3.kdf.memory", SpongeKDF.DEFAULT_MEMORY_SHIFT)));
+    /**
+     * Largest number of KDF rounds decrypt accepts by default: -Dsha3.kdf.maxIterations,
+     * else the larger of SpongeKDF's default and -Dsha3.kdf.iterations.
+     */
+    static final int DECRYPT_MAX_ITERATIONS = Integer.getInteger("sha3.kdf.maxIterations",
+            Math.max(SpongeKDF.DEFAULT_ITERATIONS,
+                     Integer.getInteger("sha3.kdf.iterations", SpongeKDF.DEFAULT_ITERATIONS)));
+    /**
+     * Key length in bytes, for each of the encryption and MAC keys.
+     */
+    private static final int KEY_LEN = 32;
+    /**
+     * Source of nonces.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+    /**
+     * Private constructor.
+     */
+    private EncryptedContainer() {}
+    /**
+     * Encrypt a stream into the container format with the default chunk size.
+     *
+     * @param in       the plaintext.
+     * @param out      the destination of the container.
+     * @param password the passphrase.
+     * @throws IOException on a read or write error.
+     */
+    public static void encrypt(InputStream in, OutputStream out, byte[] password) throws IOException {
+        encrypt(in, out, password, DEFAULT_CHUNK_SHIFT);
+    }
+    /**
+     * Encrypt a stream into the container format.
+     *
+     * @param in         the plaintext.
+     * @param out        the destination of the container.
+     * @param password   the passphrase.
+     * @param chunkShift log2 of the chunk size, 12 to 24.
+     * @throws IOException on a read or write error.
+     */
+    public static void encrypt(InputStream in, OutputStream out, byte[] password, int chunkShift)
+            throws IOException {
+        encrypt(in, out, password, chunkShift, SpongeKDF.DEFAULT_MEMORY_SHIFT, SpongeKDF.DEFAULT_ITERATIONS);
+    }
+    /**
+     * Encrypt a stream into the container format with explicit key derivation costs.
+     *
+     * @param in          the plaintext.
+     * @param out         the destination of the container.
+     * @param password    the passphrase.
+     * @param chunkShift  log2 of the chunk size, 12 to 24.
+     * @param memoryShift log2 of the KDF memory cost in KiB, 0 to 20.
+     * @param iterations  the number of KDF mixing rounds, 1 to 255.
+     * @throws IOException on a read or write error.
+     */
+    public static void encrypt(InputStream in, OutputStream out, byte[] password, int chunkShift,
+                               int memoryShift, int iterations) throws IOException {
+        if (chunkShift < MIN_CHUNK_SHIFT || chunkShift > MAX_CHUNK_SHIFT) {
+            throw new IllegalArgumentException("Invalid chunk size.");
+        }
+        SpongeKDF.validParameters(memoryShift, iterations);
+        byte[][] derived = KeyCache.forEncryption(password, memoryShift, iterations, 2 * KEY_LEN);
+        byte[] header = new byte[HEADER_LEN];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = VERSION;
+        header[MAGIC.length + 1] = (byte) chunkShift;
+        byte[] nonce = new byte[NONCE_LEN];
+        RANDOM.nextBytes(nonce);
+        System.arraycopy(nonce, 0, header, MAGIC.length + 2, NONCE_LEN);
+        header[V1_HEADER_LEN] = (byte) memoryShift;
+        header[V1_HEADER_LEN + 1] = (byte) iterations;
+        System.arraycopy(derived[0], 0, header, V1_HEADER_LEN + 2, SpongeKDF.SALT_LEN);
+
+        Session session = new Session(derived[1], header, nonce);
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(header);
+
+        int chunk = 1 << chunkShift;
+        PushbackInputStream source = new PushbackInputStream(in, 1);
+        try {
+            ChunkPipeline.run(chunk, TAG_LEN,
+                c -> {
+                    c.n = source.readNBytes(c.data, 0, chunk);
+                    // Peek one byte past a full chunk, so the last chunk is known when it is read.
+                    int next = c.n == chunk ? source.read() : -1;
+                    if (next >= 0) {
+                        source.unread(next);
+                    }
+                    c.last = next < 0;
+                    c.word = c.last ? c.n | FINAL_FLAG : c.n;
+                },
+                c -> session.keystream.fillParallel(c.index << chunkShift, c.keys, 0, c.n),
+                c -> {
+                    Keystream.xor(c.data, c.keys, c.n);
+                    session.chunkTag(c.index, c.word, c.data, c.n, c.tag);
+                    if (c.last) {
+                        session.finalTag(c.finalTag);
+                    }
+                },
+                c -> {
+                    data.writeInt(c.word);
+                    data.write(c.data, 0, c.n);
+                    data.write(c.tag);
+                    if (c.last) {
+                        data.write(c.finalTag);
+                        data.flush();
+                    }
+                });
+        } catch (AEADBadTagException e) {
+            // No encryption stage verifies a tag.
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Decrypt a container, writing each chunk as soon as its tag checks out.
+     * If an exception is thrown, whatever was already written must be discarded.
+     * The KDF cost is limited to DECRYPT_MAX_MEMORY_SHIFT and DECRYPT_MAX_ITERATIONS.
+     *
+     * @param in       the container.
+     * @param out      the destination of the plaintext.
+     * @param password the passphrase.
+     * @throws IOException          on a read or write error, a malformed container, or a KDF
+     *                              cost above the limits.
+     * @throws AEADBadTagException  if a tag does not match (wrong passphrase or tampering).
+     */
+    public static void decrypt(InputStream in, OutputStream out, byte[] password)
+            throws IOException, AEADBadTagException {
+        decrypt(in, out, password, DECRYPT_MAX_MEMORY_SHIFT, DECRYPT_MAX_ITERATIONS);
+    }
+    /**
+     * Decrypt a container whose KDF cost is at most the given limits.
+     * If an exception is thrown, whatever was already written must be discarded.
+     *
+     * @param in             the container.
+     * @param out            the destination of the plaintext.
+     * @param password       the passphrase.
+     * @param maxMemoryShift the largest accepted log2 of the KDF memory cost in KiB.
+     * @param maxIterations  the largest accepted number of KDF rounds.
+     * @throws IOException          on a read or write error, a malformed container, or a KDF
+     *                              cost above the limits.
+     * @throws AEADBadTagException  if a tag does not match (wrong passphrase or tampering).
+     */
+    public static void decrypt(InputStream in, OutputStream out, byte[] password,
+                               int maxMemoryShift, int maxIterations)
+            throws IOException, AEADBadTagException {
+        try {
+            decrypt(new DataInputStream(in), out, password, maxMemoryShift, maxIterations);
+        } catch (EOFException e) {
+            throw new IOException("Truncated container.", e);
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Decrypt a container.
+     *
+     * @param data           the container.
+     * @param out            the destination of the plaintext.
+     * @param password       the passphrase.
+     * @param maxMemoryShift the largest accepted log2 of the KDF memory cost in KiB.
+     * @param maxIterations  the largest accepted number of KDF rounds.
+     * @throws IOException          on a read or write error, a malformed container, or a KDF
+     *                              cost above the limits.
+     * @throws AEADBadTagException  if a tag does not match.
+     */
+    private static void decrypt(DataInputStream data, OutputStream out, byte[] password,
+                                int maxMemoryShift, int maxIterations)
+            throws IOException, AEADBadTagException {
+        byte[] header = new byte[V1_HEADER_LEN];
+        data.readFully(header);
+        if (!Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            throw new IOException("Not an encrypted container.");
+        }
+        int version = header[MAGIC.length];
+        if (version != VERSION && version != VERSION_1) {
+            throw new IOException("Unsupported container version: " + version);
+        }
+        int chunkShift = header[MAGIC.length + 1];
+        if (chunkShift < MIN_CHUNK_SHIFT || chunkShift > MAX_CHUNK_SHIFT) {
+            throw new IOException("Invalid chunk size.");
+        }
+        byte[] nonce = Arrays.copyOfRange(header, MAGIC.length + 2, V1_HEADER_LEN);
+        byte[] keys;
+        if (version == VERSION_1) {
+            keys = SHA3SHAKE.SHAKE(256, password, 16 * KEY_LEN, null);
+        } else {
+            header = Arrays.copyOf(header, HEADER_LEN);
+            data.readFully(header, V1_HEADER_LEN, HEADER_LEN - V1_HEADER_LEN);
+            int memoryShift = header[V1_HEADER_LEN] & 0xFF;
+            int iterations = header[V1_HEADER_LEN + 1] & 0xFF;
+            try {
+                SpongeKDF.validParameters(memoryShift, iterations);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            if (memoryShift > maxMemoryShift || iterations > maxIterations) {
+                throw new IOException("KDF cost (memory 2^" + memoryShift + " KiB, " + iterations
+                        + " rounds) exceeds the limit (2^" + maxMemoryShift + " KiB, " + maxIterations
+                        + " rounds); see -Dsha3.kdf.maxMemory and -Dsha3.kdf.maxIterations.");
+            }
+            byte[] salt = Arrays.copyOfRange(header, V1_HEADER_LEN + 2, HEADER_LEN);
+            keys = KeyCache.forDecryption(password, salt, memoryShift, iterations, 2 * KEY_LEN);
+        }
+        Session session = new Session(keys, header, nonce);
+
+        int chunk = 1 << chunkShift;
+        byte[] expected = new byte[TAG_LEN];
+        ChunkPipeline.run(chunk, TAG_LEN,
+            c -> {
+                c.word = data.readInt();
+                c.n = c.word & ~FINAL_FLAG;
+                c.last = (c.word & FINAL_FLAG) != 0;
+                if (c.n > chunk || (c.n < chunk && !c.last)) {
+                    throw new IOException("Invalid chunk length.");
+                }
+                data.readFully(c.data, 0, c.n);
+                data.readFully(c.tag);
+                if (c.last) {
+                    data.readFully(c.finalTag);
+                    if (data.read() >= 0) {
+                        throw new IOException("Unexpected data after the final tag.");
+                    }
+                }
+            },
+            c -> session.keystream.fillParallel(c.index << chunkShift, c.keys, 0, c.n),
+            c -> {
+                // Nothing reaches the writer before its tag, and the final tag, check out.
+                if (!MessageDigest.isEqual(c.tag, session.chunkTag(c.index, c.word, c.data, c.n, expected))) {
+                    throw new AEADBadTagException("Chunk " + c.index + " failed verification.");
+                }
+                if (c.last && !MessageDigest.isEqual(c.finalTag, session.finalTag(expected))) {
+                    throw new AEADBadTagException("Final tag failed verification.");
+                }
+                Keystream.xor(c.data, c.keys, c.n);
+            },
+            c -> {
+                out.write(c.data, 0, c.n);
+                if (c.last) {
+                    out.flush();
+                }
+            });
+    }
+    /**
+     * Keys and running state of one encryption or decryption.
+     */
+    private static final class Session {
+        /**
+         * The MAC key.
+         */
+        private final byte[] macKey;
+        /**
+         * The container header.
+         */
+        private final byte[] header;
+        /**
+         * The keystream for the chunk bodies.
+         */
+        private final Keystream keystream;
+        /**
+         * Sponge for the chunk tags.
+         */
+        private final SHA3SHAKE chunkSponge = new SHA3SHAKE();
+        /**
+         * Running sponge for the final tag, fed every chunk tag.
+         */
+        private final SHA3SHAKE finalSponge = new SHA3SHAKE();
+        /**
+         * Scratch buffer for integers.
+         */
+        private final byte[] scratch = new byte[Long.BYTES];
+        /**
+         * Total plaintext length so far.
+         */
+        private long total;
+        /**
+         * Constructor: split the keys and start the final tag.
+         *
+         * @param keys   the encryption key followed by the MAC key.
+         * @param header the container header.
+         * @param nonce  the nonce.
+         */
+        Session(byte[] keys, byte[] header, byte[] nonce) {
+            this.keystream = new Keystream(Arrays.copyOfRange(keys, 0, KEY_LEN), nonce);
+            this.macKey = Arrays.copyOfRange(keys, KEY_LEN, 2 * KEY_LEN);
+            this.header = header;
+            finalSponge.init(256);
+            finalSponge.absorb(macKey);
+            finalSponge.absorb(header);
+        }
+        /**
+         * Compute the tag of a chunk and add it to the final tag.
+         *
+         * @param index      the chunk index.
+         * @param word       the chunk's length word.
+         * @param ciphertext the chunk body.
+         * @param n          the body length.
+         * @param tag        the tag buffer.
+         * @return           the tag buffer.
+         */
+        byte[] chunkTag(long index, int word, byte[] ciphertext, int n, byte[] tag) {
+            chunkSponge.init(256);
+            chunkSponge.absorb(macKey);
+            chunkSponge.absorb(header);
+            chunkSponge.absorb(bigEndian(index, Long.BYTES), 0, Long.BYTES);
+            chunkSponge.absorb(bigEndian(word, Integer.BYTES), 0, Integer.BYTES);
+            chunkSponge.absorb(ciphertext, 0, n);
+            chunkSponge.digest(tag);
+            finalSponge.absorb(tag);
+            total += n;
+            return tag;
+        }
+        /**
+         * Compute the final tag.
+         *
+         * @param tag the tag buffer.
+         * @return    the tag buffer.
+         */
+        byte[] finalTag(byte[] tag) {
+            finalSponge.absorb(bigEndian(total, Long.BYTES), 0, Long.BYTES);
+            return finalSponge.digest(tag);
+        }
+        /**
+         * Write the low bytes of a value, big-endian, into the scratch buffer.
+         *
+         * @param value the value.
+         * @param len   the number of bytes.
+         * @return      the scratch buffer.
+         */
+        private byte[] bigEndian(long value, int len) {
+            for (int i = len - 1; i >= 0; i--) {
+                scratch[i] = (byte) value;
+                value >>>= 8;
+            }
+            return scratch;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Streams files through a SHA-3 sponge with NIO.
+ * Large files are memory-mapped one segment at a time and small ones are read through a
+ * reusable direct buffer, so heap use does not grow with the file size and there is no
+ * 2 GB limit. An instance reuses its sponge and buffer and is not thread-safe.
+ */
+public class FileHasher {
+//********************************* Constants *********************************\\
+    /**
+     * Files at least this large are memory-mapped instead of read.
+     */
+    private static final long MAP_THRESHOLD = 1L << 20;
+    /**
+     * Size of each memory-mapped segment.
+     */
+    private static final long SEGMENT_SIZE = 1L << 26;
+    /**
+     * Size of the direct read buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The sponge, reused for every file.
+     */
+    private final SHA3SHAKE sponge = new SHA3SHAKE();
+    /**
+     * The read buffer, allocated on first use.
+     */
+    private ByteBuffer buffer;
+    /**
+     * Default constructor.
+     */
+    public FileHasher() {}
+    /**
+     * Compute the SHA-3-<224,256,384,512> of a file.
+     *
+     * @param file   the file to hash.
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param out    hash value buffer (if null, this method allocates it with the required size)
+     * @return       the out buffer containing the desired hash value.
+     * @throws IOException if the file cannot be read.
+     */
+    public byte[] hash(Path file, int suffix, byte[] out) throws IOException {
+        if (suffix != 224 && suffix != 256 && suffix != 384 && suffix != 512) {
+            throw new IllegalArgumentException("Invalid suffix.");
+        }
+        byte[] output = out == null ? new byte[suffix / 8] : out;
+        if (output.length != suffix / 8) {
+            throw new IllegalArgumentException("Invalid buffer length.");
+        }
+        sponge.init(suffix);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                read(channel);
+            } else {
+                map(channel, size);
+            }
+        }
+        return sponge.digest(output);
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Absorb a channel through the direct buffer until end of stream.
+     * Also covers files whose reported size is 0 but still have content (e.g. under /proc).
+     *
+     * @param channel the open channel.
+     * @throws IOException on a read error.
+     */
+    private void read(FileChannel channel) throws IOException {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            sponge.absorb(buffer);
+            buffer.clear();
+        }
+    }
+    /**
+     * Absorb a channel by mapping it one segment at a time.
+     *
+     * @param channel the open channel.
+     * @param size    the size of the file.
+     * @throws IOException if a segment cannot be mapped.
+     */
+    private void map(FileChannel channel, long size) throws IOException {
+        for (long pos = 0; pos < size; pos += SEGMENT_SIZE) {
+            long len = Math.min(SEGMENT_SIZE, size - pos);
+            sponge.absorb(channel.map(FileChannel.MapMode.READ_ONLY, pos, len));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HexFormat;
+import javax.crypto.AEADBadTagException;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Thin client for HashServer. One connection carries any number of requests; calls on one
+ * client are serialized, so use one client per thread for parallel requests.
+ *
+ * Usage: java HashClient <address> computehash <security_level> <file_path>
+ *        java HashClient <address> mac <security_level> <password> <file_path> <output_length>
+ */
+public final class HashClient implements Closeable {
+    /**
+     * Stream buffer size.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The connection.
+     */
+    private final SocketChannel channel;
+    /**
+     * Requests to the server.
+     */
+    private final DataOutputStream out;
+    /**
+     * Responses from the server.
+     */
+    private final DataInputStream in;
+    /**
+     * Constructor: connect to a server.
+     *
+     * @param address the server's address (see HashServer.address(String, boolean)).
+     * @throws IOException if the connection fails.
+     */
+    public HashClient(SocketAddress address) throws IOException {
+        channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        channel.connect(address);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+    }
+    /**
+     * SHA-3-<224,256,384,512> of the data.
+     *
+     * @param suffix the suffix (224, 256, 384 or 512).
+     * @param data   the data to be hashed.
+     * @return       the digest.
+     * @throws IOException on a connection error or a rejected request.
+     */
+    public byte[] hash(int suffix, byte[] data) throws IOException {
+        return call(HashServer.OP_HASH, suffix, new byte[0], data);
+    }
+    /**
+     * SHAKE-<128,256> MAC of the password and the data, as Main's mac command computes it.
+     *
+     * @param suffix   the security level (128 or 256).
+     * @param password the password.
+     * @param data     the data to be authenticated.
+     * @param len      the MAC length in bytes (at most 65535).
+     * @return         the MAC.
+     * @throws IOException on a connection error or a rejected request.
+     */
+    public byte[] mac(int suffix, byte[] password, byte[] data, int len) throws IOException {
+        if (len < 0 || len > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid MAC length.");
+        }
+        return call(HashServer.OP_MAC, suffix << 16 | len, password, data);
+    }
+    /**
+     * Encrypt data into the container format.
+     *
+     * @param password the passphrase.
+     * @param data     the plaintext.
+     * @return         the container.
+     * @throws IOException on a connection error or a rejected request.
+     */
+    public byte[] encrypt(byte[] password, byte[] data) throws IOException {
+        return call(HashServer.OP_ENCRYPT, 0, password, data);
+    }
+    /**
+     * Decrypt a container.
+     *
+     * @param password  the passphrase.
+     * @param container the container.
+     * @return          the plaintext.
+     * @throws IOException          on a connection error or a malformed container.
+     * @throws AEADBadTagException  if the container fails verification.
+     */
+    public byte[] decrypt(byte[] password, byte[] container) throws IOException, AEADBadTagException {
+        return request(HashServer.OP_DECRYPT, 0, password, container);
+    }
+    /**
+     * Close the connection.
+     *
+     * @throws IOException if closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    /**
+     * Main method
+     * @param args          the server address, a command and its arguments.
+     * @throws IOException  on a connection error or a rejected request.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Error: Invalid number of arguments.");
+            return;
+        }
+        try (HashClient client = new HashClient(HashServer.address(args[0], true))) {
+            if (args[1].equalsIgnoreCase("computehash") && args.length == 4) {
+                byte[] data = Files.readAllBytes(Paths.get(args[3]));
+                System.out.println(HexFormat.of().formatHex(client.hash(Integer.parseInt(args[2]), data)));
+            } else if (args[1].equalsIgnoreCase("mac") && args.length == 6) {
+                byte[] data = Files.readAllBytes(Paths.get(args[4]));
+                byte[] mac = client.mac(Integer.parseInt(args[2]), args[3].getBytes(), data,
+                                        Integer.parseInt(args[5]));
+                System.out.println(HexFormat.of().formatHex(mac));
+            } else {
+                System.out.println("Error: Argument.");
+            }
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Send a request that cannot fail verification.
+     *
+     * @param op    the operation.
+     * @param param the operation's parameter.
+     * @param key   the key or password.
+     * @param data  the data.
+     * @return      the result.
+     * @throws IOException on a connection error or a rejected request.
+     */
+    private byte[] call(int op, int param, byte[] key, byte[] data) throws IOException {
+        try {
+            return request(op, param, key, data);
+        } catch (AEADBadTagException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    /**
+     * Send one request and wait for its response.
+     *
+     * @param op    the operation.
+     * @param param the operation's parameter.
+     * @param key   the key or password.
+     * @param data  the data.
+     * @return      the result.
+     * @throws IOException          on a connection error or a rejected request.
+     * @throws AEADBadTagException  if the server reports a failed tag.
+     */
+    private synchronized byte[] request(int op, int param, byte[] key, byte[] data)
+            throws IOException, AEADBadTagException {
+        out.write(op);
+        out.writeInt(param);
+        out.writeInt(key.length);
+        out.write(key);
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+        int status = in.readUnsignedByte();
+        int len = in.readInt();
+        if (len < 0) {
+            throw new IOException("Invalid response length: " + len);
+        }
+        byte[] body = new byte[len];
+        in.readFully(body);
+        switch (status) {
+            case HashServer.STATUS_OK:
+                return body;
+            case HashServer.STATUS_BAD_TAG:
+                throw new AEADBadTagException(new String(body, StandardCharsets.UTF_8));
+            default:
+                throw new IOException(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,331 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Persistent digest index for incremental re-hashing.
+ * Maps a relative path to the size, modification time and inode it had when it was hashed,
+ * and to its SHA-3 digest; a file whose metadata still matches does not need to be read again.
+ *
+ * Layout (all integers big-endian), memory-mapped read-only for lookups:
+ *   header   magic "S3IX" | version (1) | suffix (2) | record count (4) | sweep start (8)
+ *   offsets  one offset (4) per record, in ascending order of the path's UTF-8 bytes
+ *   records  path length (2) | path (UTF-8) | size (8) | mtime in ns (8) | inode (8) | digest
+ *   check    SHA3-256 of everything before it (32)
+ * Lookups binary-search the offsets table without decoding anything else. open() first checks
+ * the checksum and that the offsets chain through records that fill the file exactly, so a
+ * truncated or corrupt index is treated like a missing one and rebuilt, instead of failing a
+ * lookup or handing back a damaged digest. A record whose
+ * mtime is not older than the sweep that wrote it is treated as stale, since the file may
+ * have changed again within the timestamp resolution. New indexes are written to a temporary
+ * file beside the old one and moved over it atomically, so a crash leaves either index intact.
+ */
+public final class HashIndex {
+//********************************* Constants *********************************\\
+    /**
+     * File signature.
+     */
+    private static final byte[] MAGIC = "S3IX".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Current format version.
+     */
+    private static final int VERSION = 2;
+    /**
+     * Header length in bytes.
+     */
+    private static final int HEADER_LEN = MAGIC.length + 1 + 2 + 4 + 8;
+    /**
+     * Metadata length in bytes after the path of a record.
+     */
+    private static final int META_LEN = 3 * Long.BYTES;
+    /**
+     * Checksum length in bytes (SHA3-256).
+     */
+    private static final int CHECK_LEN = 32;
+    /**
+     * Longest path in UTF-8 bytes, as its length is stored in a signed short.
+     */
+    static final int MAX_PATH_LEN = Short.MAX_VALUE;
+    /**
+     * An index with no records.
+     */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    /**
+     * The mapped index (empty if there is none).
+     */
+    private final ByteBuffer map;
+    /**
+     * Digest length in bytes.
+     */
+    private final int digestLen;
+    /**
+     * Number of records.
+     */
+    private final int count;
+    /**
+     * When the sweep that wrote the index started, in ns since the epoch.
+     */
+    private final long sweepStart;
+    /**
+     * Constructor.
+     *
+     * @param map       the mapped index.
+     * @param digestLen digest length in bytes.
+     * @param count     number of records.
+     * @param sweepStart when the writing sweep started.
+     */
+    private HashIndex(ByteBuffer map, int digestLen, int count, long sweepStart) {
+        this.map = map;
+        this.digestLen = digestLen;
+        this.count = count;
+        this.sweepStart = sweepStart;
+    }
+    /**
+     * Open an index for lookups. A missing or corrupt index, or one written for another suffix
+     * or format version, opens empty, so every file is hashed and the index is rebuilt.
+     *
+     * @param file   the index file.
+     * @param suffix SHA-3 suffix of the digests wanted.
+     * @return       the index.
+     * @throws IOException if the index exists but cannot be read.
+     */
+    public static HashIndex open(Path file, int suffix) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return new HashIndex(EMPTY, suffix / 8, 0, 0);
+        }
+        ByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (map.capacity() < HEADER_LEN + CHECK_LEN
+                || !Arrays.equals(readBytes(map, 0, MAGIC.length), MAGIC)
+                || map.get(MAGIC.length) != VERSION
+                || map.getShort(MAGIC.length + 1) != suffix) {
+            return new HashIndex(EMPTY, suffix / 8, 0, 0);
+        }
+        int count = map.getInt(MAGIC.length + 3);
+        if (!intact(map) || !wellFormed(map, count, suffix / 8)) {
+            return new HashIndex(EMPTY, suffix / 8, 0, 0);
+        }
+        return new HashIndex(map, suffix / 8, count, map.getLong(MAGIC.length + 7));
+    }
+    /**
+     * Read the metadata that decides whether a file has changed.
+     *
+     * @param file the file.
+     * @return     size, mtime in ns and inode (0 where the file system has none).
+     * @throws IOException if the attributes cannot be read.
+     */
+    public static long[] stamp(Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long inode = 0;
+        try {
+            Object ino = Files.getAttribute(file, "unix:ino");
+            if (ino instanceof Long) {
+                inode = (Long) ino;
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // No unix view (e.g. Windows); size and mtime alone decide.
+        }
+        return new long[] {attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), inode};
+    }
+    /**
+     * Find the stored digest of a file whose metadata is unchanged.
+     * Safe to call from many threads at once.
+     *
+     * @param path  the relative path, with '/' separators.
+     * @param stamp the file's current metadata (see stamp).
+     * @return      the digest, or null if the file is new, changed or possibly changed.
+     */
+    public byte[] lookup(String path, long[] stamp) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int rec = map.getInt(HEADER_LEN + 4 * mid);
+            int len = map.getShort(rec);
+            int cmp = compare(map, rec + 2, len, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                int meta = rec + 2 + len;
+                long mtime = map.getLong(meta + 8);
+                if (map.getLong(meta) != stamp[0] || mtime != stamp[1]
+                        || map.getLong(meta + 16) != stamp[2] || mtime >= sweepStart) {
+                    return null;
+                }
+                return readBytes(map, meta + META_LEN, digestLen);
+            }
+        }
+        return null;
+    }
+    /**
+     * Write a new index and atomically replace the old one.
+     *
+     * @param file       the index file.
+     * @param suffix     SHA-3 suffix of the digests.
+     * @param sweepStart when the sweep began, in ns since the epoch (before any file was stamped).
+     * @param paths      relative paths, with '/' separators.
+     * @param stamps     the metadata of each path, as read before it was hashed.
+     * @param digests    the digest of each path.
+     * @throws IOException on a write error, or a path longer than MAX_PATH_LEN bytes.
+     */
+    public static void write(Path file, int suffix, long sweepStart, List<String> paths,
+                             List<long[]> stamps, List<byte[]> digests) throws IOException {
+        int n = paths.size();
+        List<byte[]> keys = new ArrayList<>(n);
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys.add(paths.get(i).getBytes(StandardCharsets.UTF_8));
+            if (keys.get(i).length > MAX_PATH_LEN) {
+                throw new IOException("Path too long for the hash index: " + paths.get(i));
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys.get(a), keys.get(b)));
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                MessageDigest check = new SHA3MessageDigest(256);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new DigestOutputStream(Channels.newOutputStream(channel), check), 1 << 16));
+                out.write(MAGIC);
+                out.write(VERSION);
+                out.writeShort(suffix);
+                out.writeInt(n);
+                out.writeLong(sweepStart);
+                long offset = HEADER_LEN + 4L * n;
+                for (int i : order) {
+                    if (offset > Integer.MAX_VALUE) {
+                        throw new IOException("Hash index too large.");
+                    }
+                    out.writeInt((int) offset);
+                    offset += 2 + keys.get(i).length + META_LEN + digests.get(i).length;
+                }
+                for (int i : order) {
+                    out.writeShort(keys.get(i).length);
+                    out.write(keys.get(i));
+                    for (long v : stamps.get(i)) {
+                        out.writeLong(v);
+                    }
+                    out.write(digests.get(i));
+                }
+                out.flush();
+                out.write(check.digest());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+    /**
+     * Number of records.
+     *
+     * @return the count.
+     */
+    public int size() {
+        return count;
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Check that the offsets table lies inside the index and that its offsets chain through
+     * whole records, each starting where the previous one ends, up to the checksum.
+     * Once this holds, every read a lookup makes is in bounds.
+     *
+     * @param map       the index.
+     * @param count     the record count from the header.
+     * @param digestLen digest length in bytes.
+     * @return          true if the layout is consistent.
+     */
+    private static boolean wellFormed(ByteBuffer map, int count, int digestLen) {
+        long end = map.capacity() - CHECK_LEN;
+        if (count < 0 || HEADER_LEN + 4L * count > end) {
+            return false;
+        }
+        long next = HEADER_LEN + 4L * count;
+        for (int i = 0; i < count; i++) {
+            if (map.getInt(HEADER_LEN + 4 * i) != next || next + 2 > end) {
+                return false;
+            }
+            int len = map.getShort((int) next);
+            if (len < 0) {
+                return false;
+            }
+            next += 2 + len + META_LEN + digestLen;
+            if (next > end) {
+                return false;
+            }
+        }
+        return next == end;
+    }
+    /**
+     * Check the trailing SHA3-256 against the rest of the index.
+     *
+     * @param map the index, at least CHECK_LEN bytes long.
+     * @return    true if it matches.
+     */
+    private static boolean intact(ByteBuffer map) {
+        int end = map.capacity() - CHECK_LEN;
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        sponge.init(256);
+        sponge.absorb(map.duplicate().position(0).limit(end));
+        return Arrays.equals(sponge.digest(), readBytes(map, end, CHECK_LEN));
+    }
+    /**
+     * Compare a stored path with a key in place, in the order of Arrays.compareUnsigned:
+     * bytewise unsigned, and a proper prefix first. Nothing is copied, so a lookup allocates
+     * only the key and the digest it returns.
+     *
+     * @param map the index.
+     * @param pos the first byte of the stored path.
+     * @param len the length of the stored path.
+     * @param key the key.
+     * @return    negative, zero or positive as the stored path sorts before, with or after the key.
+     */
+    private static int compare(ByteBuffer map, int pos, int len, byte[] key) {
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Byte.compareUnsigned(map.get(pos + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return len - key.length;
+    }
+    /**
+     * Copy bytes out of the index with absolute gets.
+     *
+     * @param map the index.
+     * @param pos the first byte.
+     * @param len the number of bytes.
+     * @return    the bytes.
+     */
+    private static byte[] readBytes(ByteBuffer map, int pos, int len) {
+        byte[] out = new byte[len];
+        map.get(pos, out);
+        return out;
+    }
+}
@@ -0,0 +1,426 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.AEADBadTagException;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Resident server for hash, MAC, encrypt and decrypt requests, so scripts pay JVM start-up
+ * and JIT warm-up once instead of on every call.
+ * Listens on a Unix-domain socket ("unix:/path") or loopback TCP ("port" or "host:port").
+ * Each connection is served by its own pooled thread and may carry any number of requests.
+ * Open connections and the payload held by requests in flight are both bounded; a request
+ * that cannot get its payload admitted in time is skipped and answered with an error.
+ *
+ * Framing (all integers big-endian):
+ *   request   op (1) | param (4) | length (4) | key or password (length) | length (4) | data
+ *   response  status (1) | length (4) | result, or a UTF-8 error message (length)
+ * For HASH the param is the suffix; for MAC the param is the suffix in the high half and the
+ * output length in bytes in the low half. ENCRYPT and DECRYPT take and return whole
+ * containers and plaintexts, so they suit payloads up to MAX_PAYLOAD.
+ */
+public final class HashServer implements Closeable {
+//********************************* Constants *********************************\\
+    /**
+     * SHA-3 digest of the data.
+     */
+    static final int OP_HASH = 1;
+    /**
+     * SHAKE MAC of the key and the data, as in Main's mac command.
+     */
+    static final int OP_MAC = 2;
+    /**
+     * Encrypt the data into a container.
+     */
+    static final int OP_ENCRYPT = 3;
+    /**
+     * Decrypt a container.
+     */
+    static final int OP_DECRYPT = 4;
+    /**
+     * Metrics names of the operations, by op code.
+     */
+    private static final String[] OP_NAMES = {"serve.unknown", "serve.hash", "serve.mac", "serve.encrypt", "serve.decrypt"};
+    /**
+     * The request succeeded; the body is the result.
+     */
+    static final int STATUS_OK = 0;
+    /**
+     * The request failed; the body is the error message.
+     */
+    static final int STATUS_ERROR = 1;
+    /**
+     * A decryption tag did not match; the body is the error message.
+     */
+    static final int STATUS_BAD_TAG = 2;
+    /**
+     * Largest accepted key or data field, in bytes.
+     */
+    static final int MAX_PAYLOAD = 1 << 28;
+    /**
+     * Default limit on open connections.
+     */
+    static final int DEFAULT_CONNECTIONS = 64;
+    /**
+     * Default limit on the key and data bytes held by all requests in flight.
+     */
+    static final int DEFAULT_IN_FLIGHT = 1 << 30;
+    /**
+     * Longest a request waits for its payload to be admitted.
+     */
+    private static final long ADMISSION_SECONDS = 10;
+    /**
+     * Stream buffer size per connection.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * File type bits of unix:mode, and their value for a socket.
+     */
+    private static final int S_IFMT = 0170000, S_IFSOCK = 0140000;
+    /**
+     * The listening channel.
+     */
+    private final ServerSocketChannel server;
+    /**
+     * The socket file, or null for TCP.
+     */
+    private final Path socketFile;
+    /**
+     * Threads serving connections, one per open connection.
+     */
+    private final ExecutorService pool;
+    /**
+     * Permits for open connections; accepting waits while none are left.
+     */
+    private final Semaphore connections;
+    /**
+     * Permits for payload bytes held by requests in flight.
+     */
+    private final Semaphore inFlight;
+    /**
+     * The in-flight limit, in bytes.
+     */
+    private final int maxInFlight;
+    /**
+     * Constructor: bind the listening socket with the default limits.
+     *
+     * @param address where to listen (see address(String)).
+     * @throws IOException if the socket cannot be bound.
+     */
+    public HashServer(SocketAddress address) throws IOException {
+        this(address, DEFAULT_CONNECTIONS, DEFAULT_IN_FLIGHT);
+    }
+    /**
+     * Constructor: bind the listening socket.
+     * A stale socket file left by an earlier server is replaced, but only if it is a socket
+     * that nothing is listening on; any other file at that path is left alone.
+     *
+     * @param address        where to listen (see address(String)).
+     * @param maxConnections the most connections served at once.
+     * @param maxInFlight    the most key and data bytes held by requests in flight.
+     * @throws IOException if the socket file is in use or not a socket, or binding fails.
+     */
+    public HashServer(SocketAddress address, int maxConnections, int maxInFlight) throws IOException {
+        if (maxConnections < 1 || maxInFlight < 0) {
+            throw new IllegalArgumentException("Invalid server limits: " + maxConnections + " connections, "
+                    + maxInFlight + " bytes in flight");
+        }
+        this.connections = new Semaphore(maxConnections);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        if (address instanceof UnixDomainSocketAddress) {
+            socketFile = ((UnixDomainSocketAddress) address).getPath();
+            removeStaleSocket(socketFile);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            socketFile = null;
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        pool = Executors.newFixedThreadPool(maxConnections, r -> {
+            Thread thread = new Thread(r, "hash-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    /**
+     * Parse an address to listen on, allowing loopback TCP only (see address(String, boolean)).
+     *
+     * @param spec the address text.
+     * @return     the socket address.
+     * @throws IllegalArgumentException if a TCP host is not a loopback address.
+     */
+    public static SocketAddress address(String spec) {
+        return address(spec, false);
+    }
+    /**
+     * Parse an address: "unix:/path/to/socket" for a Unix-domain socket, otherwise "port" or
+     * "host:port" for TCP, where the host defaults to the loopback address.
+     * The protocol carries passwords and data in the clear, so a host that does not resolve to
+     * a loopback address is refused unless explicitly allowed.
+     *
+     * @param spec        the address text.
+     * @param allowRemote true to accept any TCP host.
+     * @return            the socket address.
+     * @throws IllegalArgumentException if a TCP host is not allowed or the port is malformed.
+     */
+    public static SocketAddress address(String spec, boolean allowRemote) {
+        if (spec.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(spec.substring("unix:".length()));
+        }
+        int colon = spec.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        }
+        InetSocketAddress address = new InetSocketAddress(spec.substring(0, colon),
+                                                          Integer.parseInt(spec.substring(colon + 1)));
+        if (!allowRemote && (address.isUnresolved() || !address.getAddress().isLoopbackAddress())) {
+            throw new IllegalArgumentException("Not a loopback address: " + spec);
+        }
+        return address;
+    }
+    /**
+     * The address actually bound (useful with TCP port 0).
+     *
+     * @return the local address.
+     * @throws IOException if the channel is closed.
+     */
+    public SocketAddress localAddress() throws IOException {
+        return server.getLocalAddress();
+    }
+    /**
+     * Accept and serve connections until the server is closed.
+     *
+     * @throws IOException if accepting fails for a reason other than close().
+     */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                connections.acquire();
+                SocketChannel channel = server.accept();
+                try {
+                    pool.execute(() -> handle(channel));
+                } catch (RejectedExecutionException e) {
+                    channel.close();
+                    return;
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // close() was called.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Stop accepting, drop open connections and remove the socket file.
+     *
+     * @throws IOException if the socket file cannot be removed.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        pool.shutdownNow();
+        if (socketFile != null && isSocket(socketFile)) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Remove a socket file left by a server that is no longer running.
+     *
+     * @param path the socket path.
+     * @throws IOException if the path is not a socket, a server answers on it, or removing fails.
+     */
+    private static void removeStaleSocket(Path path) throws IOException {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        if (!isSocket(path)) {
+            throw new IOException("Not a socket, refusing to replace: " + path);
+        }
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(path)).close();
+        } catch (ConnectException e) {
+            Files.delete(path);
+            return;
+        }
+        throw new IOException("A server is already listening on " + path);
+    }
+    /**
+     * Whether a path is a Unix-domain socket (not following links).
+     *
+     * @param path the path.
+     * @return     true for a socket; false for anything else, a missing file, or a file system
+     *             that does not report Unix modes.
+     */
+    private static boolean isSocket(Path path) {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            return (mode & S_IFMT) == S_IFSOCK;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+    /**
+     * Serve the requests of one connection until the client hangs up, then free its slot.
+     *
+     * @param channel the connection.
+     */
+    private void handle(SocketChannel channel) {
+        try {
+            serveConnection(channel);
+        } finally {
+            connections.release();
+        }
+    }
+    /**
+     * Serve the requests of one connection until the client hangs up.
+     *
+     * @param channel the connection.
+     */
+    private void serveConnection(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    return;
+                }
+                int param = in.readInt();
+                int reserved = 0;
+                try {
+                    byte[] key = readField(in);
+                    reserved += key == null ? 0 : key.length;
+                    byte[] data = readField(in);
+                    reserved += data == null ? 0 : data.length;
+                    long start = Metrics.start();
+                    int status = STATUS_OK;
+                    byte[] result;
+                    try {
+                        if (key == null || data == null) {
+                            throw new IllegalStateException("Server busy: payload limit of "
+                                    + maxInFlight + " bytes in flight reached");
+                        }
+                        result = execute(op, param, key, data);
+                    } catch (AEADBadTagException e) {
+                        status = STATUS_BAD_TAG;
+                        result = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                    } catch (IOException | RuntimeException e) {
+                        status = STATUS_ERROR;
+                        result = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                    }
+                    if (Metrics.ENABLED) {
+                        Metrics.stop(OP_NAMES[op <= OP_DECRYPT ? op : 0], start);
+                    }
+                    out.write(status);
+                    out.writeInt(result.length);
+                    out.write(result);
+                    out.flush();
+                } finally {
+                    inFlight.release(reserved);
+                }
+            }
+        } catch (EOFException e) {
+            // Client hung up mid-request.
+        } catch (IOException e) {
+            if (!server.isOpen()) {
+                return;
+            }
+            System.err.println("Connection error: " + e.getMessage());
+        }
+    }
+    /**
+     * Run one request.
+     *
+     * @param op    the operation.
+     * @param param the operation's parameter.
+     * @param key   the key or password.
+     * @param data  the data.
+     * @return      the result.
+     * @throws IOException         if a container is malformed.
+     * @throws AEADBadTagException if a container fails verification.
+     */
+    private static byte[] execute(int op, int param, byte[] key, byte[] data)
+            throws IOException, AEADBadTagException {
+        switch (op) {
+            case OP_HASH:
+                return ConcurrentSHA3.hash(param, data, null);
+            case OP_MAC:
+                return ConcurrentSHA3.mac(param >>> 16, key, data, new byte[param & 0xFFFF]);
+            case OP_ENCRYPT: {
+                ByteArrayOutputStream sealed = new ByteArrayOutputStream(data.length + (data.length >>> 10) + 128);
+                EncryptedContainer.encrypt(new ByteArrayInputStream(data), sealed, key);
+                return sealed.toByteArray();
+            }
+            case OP_DECRYPT: {
+                ByteArrayOutputStream plain = new ByteArrayOutputStream(data.length);
+                EncryptedContainer.decrypt(new ByteArrayInputStream(data), plain, key);
+                return plain.toByteArray();
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + op);
+        }
+    }
+    /**
+     * Read a length-prefixed field, reserving its length from the in-flight limit first.
+     * The caller releases field.length permits once the request is answered.
+     *
+     * @param in the connection.
+     * @return   the field, or null if it was skipped because the limit stayed full.
+     * @throws IOException if the length is out of range, the stream ends or the server closes.
+     */
+    private byte[] readField(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MAX_PAYLOAD) {
+            throw new IOException("Invalid field length: " + len);
+        }
+        boolean admitted;
+        try {
+            admitted = len <= maxInFlight && inFlight.tryAcquire(len, ADMISSION_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Server closing");
+        }
+        if (!admitted) {
+            in.skipNBytes(len);
+            return null;
+        }
+        byte[] field = new byte[len];
+        try {
+            in.readFully(field);
+        } catch (IOException e) {
+            inFlight.release(len);
+            throw e;
+        }
+        return field;
+    }
+}
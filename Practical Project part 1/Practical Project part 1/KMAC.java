@@ -0,0 +1,205 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * KMAC128/256 and KMACXOF128/256 from NIST SP 800-185.
+ * The key is absorbed once, into a snapshot of the cSHAKE state taken right after
+ * bytepad(encode_string(K)); every MAC then starts from a copy of that snapshot, so the
+ * prefix permutations are not repeated per message. An instance is not thread-safe;
+ * give each thread its own, or share the key state with copy().
+ */
+public final class KMAC {
+//********************************* Constants *********************************\\
+    /**
+     * Function-name string for cSHAKE.
+     */
+    private static final byte[] NAME = "KMAC".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Security level (128 or 256).
+     */
+    private final int suffix;
+    /**
+     * cSHAKE state with the name, customization string and key absorbed.
+     */
+    private final SHA3SHAKE keyed;
+    /**
+     * Working sponge, restored from the keyed state for each message.
+     */
+    private final SHA3SHAKE work;
+    /**
+     * Scratch buffer for expected tags, grown as needed.
+     */
+    private byte[] expected = new byte[0];
+    /**
+     * right_encode of the last output length, reused while the length stays the same.
+     */
+    private byte[] encoded = SP800185.rightEncode(0);
+    /**
+     * The output length in bits that encoded holds.
+     */
+    private long encodedL = 0;
+    /**
+     * Constructor: absorb the key.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param K      the key
+     * @param S      customization string
+     */
+    public KMAC(int suffix, byte[] K, byte[] S) {
+        this.suffix = suffix;
+        this.keyed = new SHA3SHAKE();
+        CSHAKE.init(keyed, suffix, NAME, S);
+        SP800185.bytepad(keyed, keyed.rate(), SP800185.encodeString(K));
+        this.work = keyed.copy();
+    }
+    /**
+     * Constructor: share the keyed state of another instance.
+     *
+     * @param other the instance to copy.
+     */
+    private KMAC(KMAC other) {
+        this.suffix = other.suffix;
+        this.keyed = other.keyed;
+        this.work = other.keyed.copy();
+    }
+    /**
+     * A new instance with the same key and customization string, e.g. for another thread.
+     * The keyed state is shared read-only, so this costs one 200-byte copy.
+     *
+     * @return the copy.
+     */
+    public KMAC copy() {
+        return new KMAC(this);
+    }
+    /**
+     * Security level of this instance.
+     *
+     * @return 128 or 256.
+     */
+    public int suffix() {
+        return suffix;
+    }
+    /**
+     * Compute KMAC on input X with an output bit length L.
+     *
+     * @param X data to be authenticated
+     * @param L desired output length in bits (must be a multiple of 8)
+     * @return  the MAC, L / 8 bytes.
+     */
+    public byte[] mac(byte[] X, int L) {
+        validLength(L);
+        return mac(X, 0, X.length, new byte[L / 8]);
+    }
+    /**
+     * Compute KMAC on part of a buffer, filling the whole output buffer (L = 8 * out.length).
+     *
+     * @param X   data to be authenticated
+     * @param off index of the first byte
+     * @param len number of bytes
+     * @param out MAC buffer
+     * @return    the out buffer.
+     */
+    public byte[] mac(byte[] X, int off, int len, byte[] out) {
+        return finish(X, off, len, 8L * out.length, out, out.length);
+    }
+    /**
+     * Verify a KMAC tag in place, in constant time. The output length L is the tag length,
+     * as KMAC binds it, so a truncated tag does not match; the expected tag goes into a
+     * scratch buffer kept by this instance. Tags shorter than TagVerifier.MIN_TAG_LEN are
+     * rejected outright (L = 0 would otherwise select KMACXOF and compare nothing).
+     *
+     * @param X      buffer holding the data
+     * @param off    index of the first data byte
+     * @param len    number of data bytes
+     * @param tag    buffer holding the tag
+     * @param tagOff index of the first tag byte
+     * @param tagLen tag length in bytes
+     * @return       true if the tag is valid and at least TagVerifier.MIN_TAG_LEN bytes long.
+     */
+    public boolean verify(byte[] X, int off, int len, byte[] tag, int tagOff, int tagLen) {
+        if (tagLen < TagVerifier.MIN_TAG_LEN) {
+            return false;
+        }
+        if (expected.length < tagLen) {
+            expected = new byte[tagLen];
+        }
+        finish(X, off, len, 8L * tagLen, expected, tagLen);
+        return TagVerifier.isEqual(expected, 0, tag, tagOff, tagLen);
+    }
+    /**
+     * Compute KMACXOF on input X with an output bit length L.
+     * Unlike KMAC, the output length is not bound into the result.
+     *
+     * @param X data to be authenticated
+     * @param L desired output length in bits (must be a multiple of 8)
+     * @return  the output, L / 8 bytes.
+     */
+    public byte[] xof(byte[] X, int L) {
+        validLength(L);
+        return finish(X, 0, X.length, 0, new byte[L / 8], L / 8);
+    }
+    /**
+     * Compute KMAC-<128,256> in one call.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param K      the key
+     * @param X      data to be authenticated
+     * @param L      desired output length in bits (must be a multiple of 8)
+     * @param S      customization string
+     * @return       the MAC, L / 8 bytes.
+     */
+    public static byte[] KMAC(int suffix, byte[] K, byte[] X, int L, byte[] S) {
+        return new KMAC(suffix, K, S).mac(X, L);
+    }
+    /**
+     * Check the implementation against the NIST SP 800-185 sample values.
+     *
+     * @return true if every sample matches.
+     */
+    public static boolean selfTest() {
+        HexFormat hex = HexFormat.of();
+        byte[] K = hex.parseHex("404142434445464748494a4b4c4d4e4f505152535455565758595a5b5c5d5e5f");
+        byte[] X = hex.parseHex("00010203");
+        byte[] S = "My Tagged Application".getBytes(StandardCharsets.US_ASCII);
+        return Arrays.equals(KMAC(128, K, X, 256, new byte[0]), hex.parseHex(
+                        "e5780b0d3ea6f7d3a429c5706aa43a00fadbd7d49628839e3187243f456ee14e"))
+                && Arrays.equals(KMAC(128, K, X, 256, S), hex.parseHex(
+                        "3b1fba963cd8b0b59e8c1a6d71888b7143651af8ba0a7070c0979e2811324aa5"))
+                && Arrays.equals(KMAC(256, K, X, 512, S), hex.parseHex(
+                        "20c570c31346f703c9ac36c61c03cb64c3970d0cfc787e9b79599d273a68d2f7f69d4cc3de9d104a351689f27cf6f5951f0103f33f4f24871024d9c27773a8dd"));
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Absorb a message after the key, then right_encode(L), and squeeze.
+     *
+     * @param X   data to be authenticated
+     * @param off index of the first byte
+     * @param len number of bytes
+     * @param L   the encoded output length in bits (0 for KMACXOF)
+     * @param out output buffer
+     * @param n   number of output bytes
+     * @return    the out buffer.
+     */
+    private byte[] finish(byte[] X, int off, int len, long L, byte[] out, int n) {
+        work.copyFrom(keyed);
+        work.absorb(X, off, len);
+        if (L != encodedL) {
+            encoded = SP800185.rightEncode(L);
+            encodedL = L;
+        }
+        work.absorb(encoded);
+        return work.squeeze(out, 0, n);
+    }
+    /**
+     * Check an output length.
+     *
+     * @param L desired output length in bits
+     */
+    private static void validLength(int L) {
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8");
+        }
+    }
+}
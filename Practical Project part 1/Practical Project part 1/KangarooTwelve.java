@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * KangarooTwelve (KT128, RFC 9861): a tree hash on TurboSHAKE128, i.e. Keccak-p[1600] with 12 rounds.
+ * The input M is followed by the customization C and its length; the result S is cut into
+ * 8 KiB chunks, every chunk after the first is hashed on its own (in parallel), and the first
+ * chunk and the chaining values go through a final node. Files are read one memory-mapped
+ * window at a time, so memory use does not grow with the input.
+ */
+public final class KangarooTwelve {
+//********************************* Constants *********************************\\
+    /**
+     * Chunk size in bytes.
+     */
+    private static final int CHUNK = 8192;
+    /**
+     * Number of Keccak-p rounds.
+     */
+    private static final int ROUNDS = 12;
+    /**
+     * Security level of TurboSHAKE128.
+     */
+    private static final int SUFFIX = 128;
+    /**
+     * Chaining value length in bytes.
+     */
+    private static final int CV_LEN = 32;
+    /**
+     * Domain byte when the whole input fits in one chunk.
+     */
+    private static final long SINGLE_NODE = 0x07L;
+    /**
+     * Domain byte of the final node of a tree.
+     */
+    private static final long FINAL_NODE = 0x06L;
+    /**
+     * Domain byte of a leaf.
+     */
+    private static final long LEAF = 0x0BL;
+    /**
+     * Separator between the first chunk and the chaining values in the final node.
+     */
+    private static final byte[] CHUNK_SEPARATOR = {0x03, 0, 0, 0, 0, 0, 0, 0};
+    /**
+     * Terminator of the final node.
+     */
+    private static final byte[] TERMINATOR = {(byte) 0xFF, (byte) 0xFF};
+    /**
+     * Private constructor.
+     */
+    private KangarooTwelve() {}
+    /**
+     * Compute KangarooTwelve on input M.
+     *
+     * @param M data to be hashed
+     * @param C customization string
+     * @param L desired output length in bits (must be a multiple of 8)
+     * @return  the output, L / 8 bytes.
+     */
+    public static byte[] hash(byte[] M, byte[] C, int L) {
+        try {
+            return hash(TreeHashing.of(M), C, L);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Compute KangarooTwelve on the contents of a file.
+     *
+     * @param file the file to be hashed
+     * @param C    customization string
+     * @param L    desired output length in bits (must be a multiple of 8)
+     * @return     the output, L / 8 bytes.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] hash(Path file, byte[] C, int L) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(TreeHashing.of(channel), C, L);
+        }
+    }
+    /**
+     * Check the implementation against the RFC 9861 test vectors.
+     *
+     * @return true if every vector matches.
+     */
+    public static boolean selfTest() {
+        String[][] vectors = {
+                // M length, C length, output bytes, expected (last 32 bytes of output).
+                {"0", "-1", "32", "1ac2d450fc3b4205d19da7bfca1b37513c0803577ac7167f06fe2ce1f0ef39e5"},
+                {"0", "-1", "64", "4269c056b8c82e48276038b6d292966cc07a3d4645272e31ff38508139eb0a71"},
+                {"1", "-1", "32", "2bda92450e8b147f8a7cb629e784a058efca7cf7d8218e02d345dfaa65244a1f"},
+                {"17", "-1", "32", "6bf75fa2239198db4772e36478f8e19b0f371205f6a9a93a273f51df37122888"},
+                {"289", "-1", "32", "0c315ebcdedbf61426de7dcf8fb725d1e74675d7f5327a5067f367b108ecb67c"},
+                {"4913", "-1", "32", "cb552e2ec77d9910701d578b457ddf772c12e322e4ee7fe417f92c758f0d59d0"},
+                {"83521", "-1", "32", "8701045e22205345ff4dda05555cbb5c3af1a771c2b89baef37db43d9998b9fe"},
+                {"1419857", "-1", "32", "844d610933b1b9963cbdeb5ae3b6b05cc7cbd67ceedf883eb678a0a8e0371682"},
+                {"24137569", "-1", "32", "3c390782a8a4e89fa6367f72feaaf13255c8d95878481d3cd8ce85f58e880af8"},
+                {"0", "1", "32", "fab658db63e94a246188bf7af69a133045f46ee984c56e3c3328caaf1aa1a583"},
+        };
+        HexFormat hex = HexFormat.of();
+        for (String[] v : vectors) {
+            byte[] M = ptn(Integer.parseInt(v[0]));
+            int c = Integer.parseInt(v[1]);
+            byte[] C = c < 0 ? new byte[0] : ptn(c);
+            int len = Integer.parseInt(v[2]);
+            byte[] out = hash(M, C, 8 * len);
+            if (!Arrays.equals(Arrays.copyOfRange(out, len - 32, len), hex.parseHex(v[3]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * KangarooTwelve over any input view.
+     *
+     * @param M the input
+     * @param C customization string
+     * @param L desired output length in bits
+     * @return  the output, L / 8 bytes.
+     * @throws IOException if the input cannot be read.
+     */
+    private static byte[] hash(TreeHashing.Body M, byte[] C, int L) throws IOException {
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8");
+        }
+        byte[] encoded = lengthEncode(C.length);
+        byte[] tail = new byte[C.length + encoded.length];
+        System.arraycopy(C, 0, tail, 0, C.length);
+        System.arraycopy(encoded, 0, tail, C.length, encoded.length);
+        long total = M.size() + tail.length;
+
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        if (total <= CHUNK) {
+            sponge.init(SUFFIX, ROUNDS, SINGLE_NODE);
+            absorb(sponge, M, tail, 0, total);
+            return sponge.squeeze(L / 8);
+        }
+        sponge.init(SUFFIX, ROUNDS, FINAL_NODE);
+        absorb(sponge, M, tail, 0, CHUNK);
+        sponge.absorb(CHUNK_SEPARATOR);
+
+        long leaves = (total + CHUNK - 1) / CHUNK - 1;
+        // Leaves that lie wholly inside M, hashed in parallel one window at a time.
+        long inside = Math.max(0, M.size() / CHUNK - 1);
+        int perWindow = TreeHashing.leavesPerWindow(CHUNK);
+        byte[] cvs = new byte[perWindow * CV_LEN];
+        for (long first = 0; first < inside; first += perWindow) {
+            int count = (int) Math.min(perWindow, inside - first);
+            ByteBuffer window = M.slice((first + 1) * CHUNK, count * CHUNK);
+            TreeHashing.leaves(window, CHUNK, count, SUFFIX, ROUNDS, LEAF, cvs, CV_LEN);
+            sponge.absorb(cvs, 0, count * CV_LEN);
+        }
+        // The remaining leaves reach into the customization string.
+        SHA3SHAKE leaf = new SHA3SHAKE();
+        byte[] cv = new byte[CV_LEN];
+        for (long i = inside + 1; i <= leaves; i++) {
+            leaf.init(SUFFIX, ROUNDS, LEAF);
+            absorb(leaf, M, tail, i * CHUNK, Math.min((i + 1) * CHUNK, total));
+            sponge.absorb(leaf.squeeze(cv, CV_LEN));
+        }
+        sponge.absorb(lengthEncode(leaves));
+        sponge.absorb(TERMINATOR);
+        return sponge.squeeze(L / 8);
+    }
+    /**
+     * Absorb bytes [from, to) of M || tail.
+     *
+     * @param sponge the sponge to absorb into.
+     * @param M      the input.
+     * @param tail   the customization string and its encoded length.
+     * @param from   the first byte.
+     * @param to     the end (exclusive), at most one chunk past from.
+     * @throws IOException if the input cannot be read.
+     */
+    private static void absorb(SHA3SHAKE sponge, TreeHashing.Body M, byte[] tail, long from, long to)
+            throws IOException {
+        long size = M.size();
+        if (from < size) {
+            sponge.absorb(M.slice(from, (int) (Math.min(to, size) - from)));
+        }
+        if (to > size) {
+            int start = (int) (Math.max(from, size) - size);
+            sponge.absorb(tail, start, (int) (to - size) - start);
+        }
+    }
+    /**
+     * length_encode(x): x, big-endian, in as few bytes as possible (none for 0),
+     * followed by that byte count.
+     *
+     * @param x a non-negative integer.
+     * @return  the encoding.
+     */
+    static byte[] lengthEncode(long x) {
+        int n = 0;
+        while (n < Long.BYTES && (x >>> (8 * n)) != 0) {
+            n++;
+        }
+        byte[] out = new byte[n + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            out[i] = (byte) x;
+            x >>>= 8;
+        }
+        out[n] = (byte) n;
+        return out;
+    }
+    /**
+     * The test pattern of RFC 9861: n bytes counting 0, 1, ..., 250, 0, 1, ...
+     *
+     * @param n the length.
+     * @return  the pattern.
+     */
+    private static byte[] ptn(int n) {
+        byte[] out = new byte[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = (byte) (i % 251);
+        }
+        return out;
+    }
+}
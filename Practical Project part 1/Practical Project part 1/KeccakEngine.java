@@ -0,0 +1,25 @@
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * A Keccak-f[1600] permutation engine.
+ * Engines work on a flat state of 25 lanes, lane (x, y) at index x + 5 * y,
+ * so the sponge can swap implementations without changing its own layout.
+ */
+public interface KeccakEngine {
+    /**
+     * Apply the full Keccak-f[1600] permutation to the state, in place.
+     *
+     * @param state the 25 lanes of the state.
+     */
+    default void permute(long[] state) {
+        permute(state, SHA3SHAKE.KECCAKF_ROUNDS);
+    }
+    /**
+     * Apply the reduced-round Keccak-p[1600, rounds] permutation to the state, in place.
+     * These are the last rounds of Keccak-f[1600] (e.g. rounds 12 to 23 for KangarooTwelve).
+     *
+     * @param state  the 25 lanes of the state.
+     * @param rounds the number of rounds, 1 to 24.
+     */
+    void permute(long[] state, int rounds);
+}
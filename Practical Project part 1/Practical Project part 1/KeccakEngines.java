@@ -0,0 +1,221 @@
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Picks the multi-buffer Keccak engine for this machine: the scalar KeccakInterleaved, which
+ * runs everywhere, or the SIMD KeccakVector, which needs the jdk.incubator.vector module and
+ * only pays off where the JIT maps it onto wide vector registers (AVX2, AVX-512).
+ * KeccakVector is built separately and loaded reflectively, so a JVM without it, or started
+ * without --add-modules jdk.incubator.vector, simply stays on the scalar engine.
+ * Nothing runs when the class loads: the engine is chosen when the first batch asks for one,
+ * according to the system property sha3.engine:
+ *   scalar  always KeccakInterleaved.
+ *   vector  KeccakVector if it loads and passes its self-check, else KeccakInterleaved.
+ *   auto    (default) KeccakInterleaved at once, while a background thread runs calibrate()
+ *           and switches to KeccakVector if it wins; the first batch never waits for it.
+ * calibrate() times both engines until the vector engine has clearly won or the budget runs
+ * out. Until the JIT compiles it, Vector API code runs orders of magnitude slower than scalar
+ * code, so that takes one to three seconds; a process can also call it itself, e.g. at start-up.
+ */
+public final class KeccakEngines {
+//********************************* Constants *********************************\\
+    /**
+     * System property choosing the engine.
+     */
+    public static final String PROPERTY = "sha3.engine";
+    /**
+     * Number of states the scalar engine permutes together.
+     */
+    static final int SCALAR_WAYS = 4;
+    /**
+     * The scalar engine; it holds no state, so one instance is shared.
+     */
+    private static final KeccakMultiEngine SCALAR = new KeccakInterleaved(SCALAR_WAYS);
+    /**
+     * Random batches each engine must permute like KeccakReference before it is used.
+     */
+    private static final int CHECK_TRIALS = 8;
+    /**
+     * Length of one timing sample.
+     */
+    private static final long SAMPLE_NANOS = 20_000_000L;
+    /**
+     * Longest a calibration runs before settling on the scalar engine.
+     */
+    private static final long CALIBRATION_NANOS = 3_000_000_000L;
+    /**
+     * Speed-up per state the vector engine must show before it is chosen.
+     */
+    private static final double MARGIN = 1.2;
+    /**
+     * Consecutive samples in which the vector engine must beat the margin.
+     */
+    private static final int WINS = 3;
+    /**
+     * The vector engine once chosen (it is thread-safe, so one instance is shared), or null
+     * while the scalar engine is in use.
+     */
+    private static volatile KeccakMultiEngine vector;
+    /**
+     * Why the current engine was chosen, or null until it has been.
+     */
+    private static volatile String reason;
+    /**
+     * Private constructor.
+     */
+    private KeccakEngines() {}
+    /**
+     * The multi-buffer engine, choosing it first if no batch has asked yet. Both engines hold
+     * no state and are thread-safe, so every caller gets the same instance. Never waits for a
+     * calibration; the scalar engine is returned until one has switched to the vector engine.
+     *
+     * @return the engine currently chosen.
+     */
+    public static KeccakMultiEngine multi() {
+        choose();
+        KeccakMultiEngine chosen = vector;
+        return chosen != null ? chosen : SCALAR;
+    }
+    /**
+     * The engine chosen and why, e.g. for a startup log line; chooses it first if needed.
+     *
+     * @return the description.
+     */
+    public static String describe() {
+        choose();
+        return reason;
+    }
+    /**
+     * Self-check the vector engine, then time both engines in alternating samples until the
+     * vector engine has beaten the margin in enough consecutive samples (and switch to it) or
+     * the time runs out (and stay scalar). Runs on the calling thread and replaces any earlier
+     * choice, whatever sha3.engine says; until it finishes, the previous choice stays in use.
+     *
+     * @return the description of the engine chosen.
+     */
+    public static synchronized String calibrate() {
+        KeccakMultiEngine candidate = loadVector();
+        if (candidate == null) {
+            vector = null;
+            return reason;
+        }
+        long[] vectorStates = new long[25 * candidate.ways()];
+        long[] scalarStates = new long[25 * SCALAR.ways()];
+        long end = System.nanoTime() + CALIBRATION_NANOS;
+        int wins = 0;
+        double speedup = 0;
+        while (wins < WINS && System.nanoTime() < end) {
+            speedup = sample(SCALAR, scalarStates) / sample(candidate, vectorStates);
+            wins = speedup >= MARGIN ? wins + 1 : 0;
+        }
+        if (wins < WINS) {
+            vector = null;
+            reason = String.format("scalar (vector engine %.2fx scalar)", speedup);
+        } else {
+            vector = candidate;
+            reason = String.format("vector, %d ways (%.2fx scalar)", candidate.ways(), speedup);
+        }
+        return reason;
+    }
+    /**
+     * Check every engine available in this JVM against KeccakReference.
+     *
+     * @return true if the scalar engine, and the vector engine if it loads, agree with it.
+     */
+    public static boolean selfTest() {
+        KeccakMultiEngine candidate = newVector();
+        return SCALAR.agrees(CHECK_TRIALS, 1)
+                && (candidate == null || candidate.agrees(CHECK_TRIALS, 1));
+    }
+    /**
+     * Instantiate KeccakVector by name, so callers link without the Vector API.
+     *
+     * @return the engine, or null if it or its module cannot be loaded.
+     */
+    static KeccakMultiEngine newVector() {
+        try {
+            return Class.forName("KeccakVector").asSubclass(KeccakMultiEngine.class)
+                    .getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Choose the engine as sha3.engine says, once. Only the vector mode does any work here (a
+     * short self-check); auto hands the timing to a daemon thread and publishes the result
+     * through the volatile fields, so callers are never held up by it.
+     */
+    private static void choose() {
+        if (reason != null) {
+            return;
+        }
+        synchronized (KeccakEngines.class) {
+            if (reason != null) {
+                return;
+            }
+            String mode = System.getProperty(PROPERTY, "auto");
+            switch (mode) {
+                case "scalar":
+                    reason = "scalar (" + PROPERTY + "=scalar)";
+                    break;
+                case "vector":
+                    KeccakMultiEngine candidate = loadVector();
+                    if (candidate != null) {
+                        vector = candidate;
+                        reason = "vector, " + candidate.ways() + " ways (" + PROPERTY + "=vector)";
+                    }
+                    break;
+                case "auto":
+                    reason = "scalar (calibrating)";
+                    Thread thread = new Thread(KeccakEngines::calibrate, "keccak-calibration");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.start();
+                    break;
+                default:
+                    reason = "scalar (unknown " + PROPERTY + "=" + mode + ")";
+                    break;
+            }
+        }
+    }
+    /**
+     * Load KeccakVector and check it against KeccakReference.
+     *
+     * @return the engine, or null (with the reason recorded) if it is unavailable, no wider
+     *         than one state, or wrong.
+     */
+    private static KeccakMultiEngine loadVector() {
+        KeccakMultiEngine candidate = newVector();
+        if (candidate == null) {
+            reason = "scalar (vector engine not built or no --add-modules jdk.incubator.vector)";
+            return null;
+        }
+        if (candidate.ways() < 2) {
+            reason = "scalar (no SIMD registers for the vector engine)";
+            return null;
+        }
+        if (!candidate.agrees(CHECK_TRIALS, System.nanoTime())) {
+            reason = "scalar (vector engine failed its self-check)";
+            return null;
+        }
+        return candidate;
+    }
+    /**
+     * Time an engine for one sample.
+     *
+     * @param engine the engine.
+     * @param states its states.
+     * @return       nanoseconds per state permuted.
+     */
+    private static double sample(KeccakMultiEngine engine, long[] states) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            engine.permute(states);
+            ops++;
+            now = System.nanoTime();
+        } while (now - start < SAMPLE_NANOS);
+        return (now - start) / (double) (ops * engine.ways());
+    }
+}
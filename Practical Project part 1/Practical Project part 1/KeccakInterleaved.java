@@ -0,0 +1,293 @@
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Multi-buffer Keccak-f[1600] permutation over several independent states at once.
+ * The states are interleaved lane-major (lane i of state k at index i * ways + k), the layout
+ * a SIMD backend loads directly, one vector per lane across all states.
+ * This is the scalar engine. States are permuted in pairs, straight from the interleaved
+ * array: both states' lanes are held in local variables and every step of a round is written
+ * out for the first state and then the second, so two independent dependency chains are in
+ * flight at once. Measured on a wide out-of-order x86 core this runs at the speed of
+ * KeccakUnrolled per state, as one state already exposes enough parallelism to fill it; the
+ * speed-up for batches comes from KeccakVector. A lone last state is permuted as a pair
+ * with itself.
+ * The engine holds no scratch space and is thread-safe.
+ */
+public final class KeccakInterleaved implements KeccakMultiEngine {
+    /**
+     * Number of states permuted together.
+     */
+    private final int ways;
+    /**
+     * Constructor.
+     *
+     * @param ways the number of states permuted together.
+     */
+    public KeccakInterleaved(int ways) {
+        if (ways < 1) {
+            throw new IllegalArgumentException("Invalid number of ways.");
+        }
+        this.ways = ways;
+    }
+    /**
+     * The number of states permuted together.
+     *
+     * @return the width.
+     */
+    @Override
+    public int ways() {
+        return ways;
+    }
+    /**
+     * Apply Keccak-f[1600] to every state, in place.
+     *
+     * @param states 25 * ways lanes, lane i of state k at index i * ways + k.
+     */
+    @Override
+    public void permute(long[] states) {
+        final int n = ways;
+        for (int k = 0; k < n; k += 2) {
+            permutePair(states, n, k, Math.min(k + 1, n - 1));
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * The Keccakf permutation on two interleaved states, with Rho and Pi merged into a single
+     * pass. Every lane is loaded before any is stored, so p == q permutes one state.
+     *
+     * @param s the interleaved states.
+     * @param n the number of interleaved states.
+     * @param p the first state.
+     * @param q the second state.
+     */
+    private static void permutePair(long[] s, int n, int p, int q) {
+        long a00p = s[p];
+        long a00q = s[q];
+        long a01p = s[n + p];
+        long a01q = s[n + q];
+        long a02p = s[2 * n + p];
+        long a02q = s[2 * n + q];
+        long a03p = s[3 * n + p];
+        long a03q = s[3 * n + q];
+        long a04p = s[4 * n + p];
+        long a04q = s[4 * n + q];
+        long a05p = s[5 * n + p];
+        long a05q = s[5 * n + q];
+        long a06p = s[6 * n + p];
+        long a06q = s[6 * n + q];
+        long a07p = s[7 * n + p];
+        long a07q = s[7 * n + q];
+        long a08p = s[8 * n + p];
+        long a08q = s[8 * n + q];
+        long a09p = s[9 * n + p];
+        long a09q = s[9 * n + q];
+        long a10p = s[10 * n + p];
+        long a10q = s[10 * n + q];
+        long a11p = s[11 * n + p];
+        long a11q = s[11 * n + q];
+        long a12p = s[12 * n + p];
+        long a12q = s[12 * n + q];
+        long a13p = s[13 * n + p];
+        long a13q = s[13 * n + q];
+        long a14p = s[14 * n + p];
+        long a14q = s[14 * n + q];
+        long a15p = s[15 * n + p];
+        long a15q = s[15 * n + q];
+        long a16p = s[16 * n + p];
+        long a16q = s[16 * n + q];
+        long a17p = s[17 * n + p];
+        long a17q = s[17 * n + q];
+        long a18p = s[18 * n + p];
+        long a18q = s[18 * n + q];
+        long a19p = s[19 * n + p];
+        long a19q = s[19 * n + q];
+        long a20p = s[20 * n + p];
+        long a20q = s[20 * n + q];
+        long a21p = s[21 * n + p];
+        long a21q = s[21 * n + q];
+        long a22p = s[22 * n + p];
+        long a22q = s[22 * n + q];
+        long a23p = s[23 * n + p];
+        long a23q = s[23 * n + q];
+        long a24p = s[24 * n + p];
+        long a24q = s[24 * n + q];
+        for (int r = 0; r < SHA3SHAKE.KECCAKF_ROUNDS; r++) {
+            // Theta.
+            long c0p = a00p ^ a05p ^ a10p ^ a15p ^ a20p;
+            long c0q = a00q ^ a05q ^ a10q ^ a15q ^ a20q;
+            long c1p = a01p ^ a06p ^ a11p ^ a16p ^ a21p;
+            long c1q = a01q ^ a06q ^ a11q ^ a16q ^ a21q;
+            long c2p = a02p ^ a07p ^ a12p ^ a17p ^ a22p;
+            long c2q = a02q ^ a07q ^ a12q ^ a17q ^ a22q;
+            long c3p = a03p ^ a08p ^ a13p ^ a18p ^ a23p;
+            long c3q = a03q ^ a08q ^ a13q ^ a18q ^ a23q;
+            long c4p = a04p ^ a09p ^ a14p ^ a19p ^ a24p;
+            long c4q = a04q ^ a09q ^ a14q ^ a19q ^ a24q;
+            long d0p = c4p ^ Long.rotateLeft(c1p, 1);
+            long d0q = c4q ^ Long.rotateLeft(c1q, 1);
+            long d1p = c0p ^ Long.rotateLeft(c2p, 1);
+            long d1q = c0q ^ Long.rotateLeft(c2q, 1);
+            long d2p = c1p ^ Long.rotateLeft(c3p, 1);
+            long d2q = c1q ^ Long.rotateLeft(c3q, 1);
+            long d3p = c2p ^ Long.rotateLeft(c4p, 1);
+            long d3q = c2q ^ Long.rotateLeft(c4q, 1);
+            long d4p = c3p ^ Long.rotateLeft(c0p, 1);
+            long d4q = c3q ^ Long.rotateLeft(c0q, 1);
+            // Rho and Pi.
+            long b00p = a00p ^ d0p;
+            long b00q = a00q ^ d0q;
+            long b01p = Long.rotateLeft(a06p ^ d1p, 44);
+            long b01q = Long.rotateLeft(a06q ^ d1q, 44);
+            long b02p = Long.rotateLeft(a12p ^ d2p, 43);
+            long b02q = Long.rotateLeft(a12q ^ d2q, 43);
+            long b03p = Long.rotateLeft(a18p ^ d3p, 21);
+            long b03q = Long.rotateLeft(a18q ^ d3q, 21);
+            long b04p = Long.rotateLeft(a24p ^ d4p, 14);
+            long b04q = Long.rotateLeft(a24q ^ d4q, 14);
+            long b05p = Long.rotateLeft(a03p ^ d3p, 28);
+            long b05q = Long.rotateLeft(a03q ^ d3q, 28);
+            long b06p = Long.rotateLeft(a09p ^ d4p, 20);
+            long b06q = Long.rotateLeft(a09q ^ d4q, 20);
+            long b07p = Long.rotateLeft(a10p ^ d0p, 3);
+            long b07q = Long.rotateLeft(a10q ^ d0q, 3);
+            long b08p = Long.rotateLeft(a16p ^ d1p, 45);
+            long b08q = Long.rotateLeft(a16q ^ d1q, 45);
+            long b09p = Long.rotateLeft(a22p ^ d2p, 61);
+            long b09q = Long.rotateLeft(a22q ^ d2q, 61);
+            long b10p = Long.rotateLeft(a01p ^ d1p, 1);
+            long b10q = Long.rotateLeft(a01q ^ d1q, 1);
+            long b11p = Long.rotateLeft(a07p ^ d2p, 6);
+            long b11q = Long.rotateLeft(a07q ^ d2q, 6);
+            long b12p = Long.rotateLeft(a13p ^ d3p, 25);
+            long b12q = Long.rotateLeft(a13q ^ d3q, 25);
+            long b13p = Long.rotateLeft(a19p ^ d4p, 8);
+            long b13q = Long.rotateLeft(a19q ^ d4q, 8);
+            long b14p = Long.rotateLeft(a20p ^ d0p, 18);
+            long b14q = Long.rotateLeft(a20q ^ d0q, 18);
+            long b15p = Long.rotateLeft(a04p ^ d4p, 27);
+            long b15q = Long.rotateLeft(a04q ^ d4q, 27);
+            long b16p = Long.rotateLeft(a05p ^ d0p, 36);
+            long b16q = Long.rotateLeft(a05q ^ d0q, 36);
+            long b17p = Long.rotateLeft(a11p ^ d1p, 10);
+            long b17q = Long.rotateLeft(a11q ^ d1q, 10);
+            long b18p = Long.rotateLeft(a17p ^ d2p, 15);
+            long b18q = Long.rotateLeft(a17q ^ d2q, 15);
+            long b19p = Long.rotateLeft(a23p ^ d3p, 56);
+            long b19q = Long.rotateLeft(a23q ^ d3q, 56);
+            long b20p = Long.rotateLeft(a02p ^ d2p, 62);
+            long b20q = Long.rotateLeft(a02q ^ d2q, 62);
+            long b21p = Long.rotateLeft(a08p ^ d3p, 55);
+            long b21q = Long.rotateLeft(a08q ^ d3q, 55);
+            long b22p = Long.rotateLeft(a14p ^ d4p, 39);
+            long b22q = Long.rotateLeft(a14q ^ d4q, 39);
+            long b23p = Long.rotateLeft(a15p ^ d0p, 41);
+            long b23q = Long.rotateLeft(a15q ^ d0q, 41);
+            long b24p = Long.rotateLeft(a21p ^ d1p, 2);
+            long b24q = Long.rotateLeft(a21q ^ d1q, 2);
+            // Chi.
+            a00p = b00p ^ (~b01p & b02p);
+            a00q = b00q ^ (~b01q & b02q);
+            a01p = b01p ^ (~b02p & b03p);
+            a01q = b01q ^ (~b02q & b03q);
+            a02p = b02p ^ (~b03p & b04p);
+            a02q = b02q ^ (~b03q & b04q);
+            a03p = b03p ^ (~b04p & b00p);
+            a03q = b03q ^ (~b04q & b00q);
+            a04p = b04p ^ (~b00p & b01p);
+            a04q = b04q ^ (~b00q & b01q);
+            a05p = b05p ^ (~b06p & b07p);
+            a05q = b05q ^ (~b06q & b07q);
+            a06p = b06p ^ (~b07p & b08p);
+            a06q = b06q ^ (~b07q & b08q);
+            a07p = b07p ^ (~b08p & b09p);
+            a07q = b07q ^ (~b08q & b09q);
+            a08p = b08p ^ (~b09p & b05p);
+            a08q = b08q ^ (~b09q & b05q);
+            a09p = b09p ^ (~b05p & b06p);
+            a09q = b09q ^ (~b05q & b06q);
+            a10p = b10p ^ (~b11p & b12p);
+            a10q = b10q ^ (~b11q & b12q);
+            a11p = b11p ^ (~b12p & b13p);
+            a11q = b11q ^ (~b12q & b13q);
+            a12p = b12p ^ (~b13p & b14p);
+            a12q = b12q ^ (~b13q & b14q);
+            a13p = b13p ^ (~b14p & b10p);
+            a13q = b13q ^ (~b14q & b10q);
+            a14p = b14p ^ (~b10p & b11p);
+            a14q = b14q ^ (~b10q & b11q);
+            a15p = b15p ^ (~b16p & b17p);
+            a15q = b15q ^ (~b16q & b17q);
+            a16p = b16p ^ (~b17p & b18p);
+            a16q = b16q ^ (~b17q & b18q);
+            a17p = b17p ^ (~b18p & b19p);
+            a17q = b17q ^ (~b18q & b19q);
+            a18p = b18p ^ (~b19p & b15p);
+            a18q = b18q ^ (~b19q & b15q);
+            a19p = b19p ^ (~b15p & b16p);
+            a19q = b19q ^ (~b15q & b16q);
+            a20p = b20p ^ (~b21p & b22p);
+            a20q = b20q ^ (~b21q & b22q);
+            a21p = b21p ^ (~b22p & b23p);
+            a21q = b21q ^ (~b22q & b23q);
+            a22p = b22p ^ (~b23p & b24p);
+            a22q = b22q ^ (~b23q & b24q);
+            a23p = b23p ^ (~b24p & b20p);
+            a23q = b23q ^ (~b24q & b20q);
+            a24p = b24p ^ (~b20p & b21p);
+            a24q = b24q ^ (~b20q & b21q);
+            // Iota.
+            a00p ^= SHA3SHAKE.KECCAKF_RNDC[r];
+            a00q ^= SHA3SHAKE.KECCAKF_RNDC[r];
+        }
+        s[p] = a00p;
+        s[q] = a00q;
+        s[n + p] = a01p;
+        s[n + q] = a01q;
+        s[2 * n + p] = a02p;
+        s[2 * n + q] = a02q;
+        s[3 * n + p] = a03p;
+        s[3 * n + q] = a03q;
+        s[4 * n + p] = a04p;
+        s[4 * n + q] = a04q;
+        s[5 * n + p] = a05p;
+        s[5 * n + q] = a05q;
+        s[6 * n + p] = a06p;
+        s[6 * n + q] = a06q;
+        s[7 * n + p] = a07p;
+        s[7 * n + q] = a07q;
+        s[8 * n + p] = a08p;
+        s[8 * n + q] = a08q;
+        s[9 * n + p] = a09p;
+        s[9 * n + q] = a09q;
+        s[10 * n + p] = a10p;
+        s[10 * n + q] = a10q;
+        s[11 * n + p] = a11p;
+        s[11 * n + q] = a11q;
+        s[12 * n + p] = a12p;
+        s[12 * n + q] = a12q;
+        s[13 * n + p] = a13p;
+        s[13 * n + q] = a13q;
+        s[14 * n + p] = a14p;
+        s[14 * n + q] = a14q;
+        s[15 * n + p] = a15p;
+        s[15 * n + q] = a15q;
+        s[16 * n + p] = a16p;
+        s[16 * n + q] = a16q;
+        s[17 * n + p] = a17p;
+        s[17 * n + q] = a17q;
+        s[18 * n + p] = a18p;
+        s[18 * n + q] = a18q;
+        s[19 * n + p] = a19p;
+        s[19 * n + q] = a19q;
+        s[20 * n + p] = a20p;
+        s[20 * n + q] = a20q;
+        s[21 * n + p] = a21p;
+        s[21 * n + q] = a21q;
+        s[22 * n + p] = a22p;
+        s[22 * n + q] = a22q;
+        s[23 * n + p] = a23p;
+        s[23 * n + q] = a23q;
+        s[24 * n + p] = a24p;
+        s[24 * n + q] = a24q;
+    }
+}
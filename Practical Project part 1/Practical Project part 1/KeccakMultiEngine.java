@@ -0,0 +1,57 @@
+import java.util.Random;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * A multi-buffer Keccak-f[1600] permutation engine, permuting several independent states at once.
+ * States are interleaved lane-major (lane i of state k at index i * ways() + k), so a SIMD
+ * backend loads each lane of every state with a single vector load.
+ * Implementations must be thread-safe, since KeccakEngines, which picks the implementation
+ * for this machine, shares one instance among all callers.
+ */
+public interface KeccakMultiEngine {
+    /**
+     * The number of states permuted together.
+     *
+     * @return the width.
+     */
+    int ways();
+    /**
+     * Apply Keccak-f[1600] to every state, in place.
+     *
+     * @param states 25 * ways() lanes, lane i of state k at index i * ways() + k.
+     */
+    void permute(long[] states);
+    /**
+     * Check this engine against KeccakReference on pseudo-random states.
+     *
+     * @param trials the number of random batches to permute.
+     * @param seed   the seed for the random states.
+     * @return       true if every state matched the reference every time.
+     */
+    default boolean agrees(int trials, long seed) {
+        int ways = ways();
+        KeccakReference reference = new KeccakReference();
+        Random random = new Random(seed);
+        long[] states = new long[25 * ways];
+        long[] single = new long[25];
+        for (int t = 0; t < trials; t++) {
+            for (int i = 0; i < states.length; i++) {
+                states[i] = random.nextLong();
+            }
+            long[] before = states.clone();
+            permute(states);
+            for (int k = 0; k < ways; k++) {
+                for (int i = 0; i < 25; i++) {
+                    single[i] = before[i * ways + k];
+                }
+                reference.permute(single);
+                for (int i = 0; i < 25; i++) {
+                    if (single[i] != states[i * ways + k]) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.Random;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Reference Keccak-f[1600] permutation.
+ * This is the original loop version of SHA3SHAKE.keccakF(), kept as a readable
+ * specification that faster engines are checked against.
+ */
+public final class KeccakReference implements KeccakEngine {
+    /**
+     * Default constructor.
+     */
+    public KeccakReference() {}
+    /**
+     * The Keccakf permutation.
+     *
+     * @param state  the 25 lanes of the state, lane (x, y) at index x + 5 * y.
+     * @param rounds the number of rounds, counted back from the last one.
+     */
+    @Override
+    public void permute(long[] state, int rounds) {
+        for (int r = SHA3SHAKE.KECCAKF_ROUNDS - rounds; r < SHA3SHAKE.KECCAKF_ROUNDS; r++) {
+            // Theta.
+            long[] pillar = new long[5];
+            for (int i = 0; i < 5; i++) {
+                for (int j = 0; j < 5; j++) {
+                    pillar[i] ^= state[j * 5 + i];
+                }
+            }
+            for (int i = 0; i < 5; i++) {
+                long sheet = pillar[(i + 4) % 5] ^ SHA3SHAKE.ROTL64(pillar[(i + 1) % 5], 1);
+                for (int j = 0; j < 5; j++) {
+                    state[j * 5 + i] ^= sheet;
+                }
+            }
+            // Rho.
+            for (int i = 0; i < 5; i++) {
+                for (int j = 0; j < 5; j++) {
+                    state[i * 5 + j] = SHA3SHAKE.ROTL64(state[i * 5 + j], SHA3SHAKE.KECCAKF_ROTC[i * 5 + j]);
+                }
+            }
+            // Pi.
+            int x = 0, y = 1, prevX, prevY;
+            long temp = state[y * 5 + x];
+            for (int i = 0; i < 23; i++) {
+                prevX = x;
+                prevY = y;
+                y = x;
+                x = (x + 3 * prevY) % 5;
+                state[prevY * 5 + prevX] = state[y * 5 + x];
+            }
+            state[y * 5 + x] = temp;
+            // Chi.
+            long[] buffer = new long[5];
+            for (int i = 0; i < 5; i++) {
+                System.arraycopy(state, i * 5, buffer, 0, 5);
+                for (int j = 0; j < 5; j++) {
+                    state[i * 5 + j] ^= (~buffer[(j + 1) % 5]) & buffer[(j + 2) % 5];
+                }
+            }
+            // Iota.
+            state[0] ^= SHA3SHAKE.KECCAKF_RNDC[r];
+        }
+    }
+    /**
+     * Check an engine against this reference on a number of pseudo-random states.
+     *
+     * @param engine the engine under test.
+     * @param trials the number of random states to permute.
+     * @param seed   the seed for the random states.
+     * @return       true if the engine produced the same state as the reference every time.
+     */
+    public static boolean agrees(KeccakEngine engine, int trials, long seed) {
+        KeccakReference reference = new KeccakReference();
+        Random random = new Random(seed);
+        long[] expected = new long[25];
+        long[] actual = new long[25];
+        for (int t = 0; t < trials; t++) {
+            for (int i = 0; i < 25; i++) {
+                expected[i] = random.nextLong();
+            }
+            System.arraycopy(expected, 0, actual, 0, 25);
+            reference.permute(expected);
+            engine.permute(actual);
+            if (!Arrays.equals(expected, actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,221 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Bounded, expiring in-process cache of keys derived with SpongeKDF, so that encrypting or
+ * decrypting many files under one passphrase pays the derivation cost once.
+ * Encryption reuses one random salt per passphrase and cost setting while its entry lives;
+ * every container still gets its own nonce, so keystreams never repeat. Entries are found by
+ * a KMAC256 fingerprint of the passphrase under a random key drawn once per process, never by
+ * the passphrase itself, so a fingerprint seen in a heap dump cannot be checked against
+ * guessed passphrases at hash speed. Keys are wiped when they are evicted or expire.
+ */
+public final class KeyCache {
+//********************************* Constants *********************************\\
+    /**
+     * Largest number of cached keys.
+     */
+    static final int MAX_ENTRIES = 32;
+    /**
+     * Lifetime of an entry in nanoseconds (five minutes).
+     */
+    static final long TTL_NANOS = 5L * 60 * 1_000_000_000L;
+    /**
+     * Source of salts.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+    /**
+     * Fingerprint length in bytes.
+     */
+    private static final int FINGERPRINT_LEN = 32;
+    /**
+     * KMAC256 under this process's random fingerprint key; each fingerprint runs on a copy.
+     */
+    private static final KMAC FINGERPRINT = newFingerprintKey();
+    /**
+     * Entries in least-recently-used order.
+     */
+    private static final LinkedHashMap<ByteBuffer, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true) {
+        /**
+         * Drop the least-recently-used entry once the cache is full.
+         *
+         * @param eldest the least-recently-used entry.
+         * @return       true if it should be removed.
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                Arrays.fill(eldest.getValue().keys, (byte) 0);
+                return true;
+            }
+            return false;
+        }
+    };
+    /**
+     * Private constructor.
+     */
+    private KeyCache() {}
+    /**
+     * Salt and keys for encryption: cached ones if present, otherwise a fresh salt and a new
+     * derivation, which are then cached for both encryption and decryption.
+     *
+     * @param password    the passphrase.
+     * @param memoryShift log2 of the memory cost in KiB.
+     * @param iterations  the number of mixing rounds.
+     * @param len         the key material length in bytes.
+     * @return            the salt (index 0) and the key material (index 1).
+     */
+    public static byte[][] forEncryption(byte[] password, int memoryShift, int iterations, int len) {
+        ByteBuffer id = fingerprint(password, null, memoryShift, iterations, len);
+        Entry entry = lookup(id);
+        if (entry == null) {
+            byte[] salt = new byte[SpongeKDF.SALT_LEN];
+            RANDOM.nextBytes(salt);
+            entry = new Entry(salt, SpongeKDF.derive(password, salt, memoryShift, iterations, len));
+            store(id, entry.copy());
+            store(fingerprint(password, salt, memoryShift, iterations, len), entry.copy());
+        }
+        return new byte[][] {entry.salt, entry.keys};
+    }
+    /**
+     * Keys for decryption with a given salt: cached ones if present, otherwise a new
+     * derivation, which is then cached.
+     *
+     * @param password    the passphrase.
+     * @param salt        the salt from the container header.
+     * @param memoryShift log2 of the memory cost in KiB.
+     * @param iterations  the number of mixing rounds.
+     * @param len         the key material length in bytes.
+     * @return            the key material.
+     */
+    public static byte[] forDecryption(byte[] password, byte[] salt, int memoryShift, int iterations, int len) {
+        ByteBuffer id = fingerprint(password, salt, memoryShift, iterations, len);
+        Entry entry = lookup(id);
+        if (entry == null) {
+            entry = new Entry(salt.clone(), SpongeKDF.derive(password, salt, memoryShift, iterations, len));
+            store(id, entry.copy());
+        }
+        return entry.keys;
+    }
+    /**
+     * Drop and wipe every entry.
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            for (Entry entry : ENTRIES.values()) {
+                Arrays.fill(entry.keys, (byte) 0);
+            }
+            ENTRIES.clear();
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Find a live entry, dropping expired ones on the way.
+     * The caller gets a copy, so a later eviction cannot wipe keys it is still using.
+     *
+     * @param id the entry's fingerprint.
+     * @return   a copy of the entry, or null.
+     */
+    private static Entry lookup(ByteBuffer id) {
+        long now = System.nanoTime();
+        synchronized (ENTRIES) {
+            Iterator<Entry> it = ENTRIES.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (now - entry.created > TTL_NANOS) {
+                    Arrays.fill(entry.keys, (byte) 0);
+                    it.remove();
+                }
+            }
+            Entry entry = ENTRIES.get(id);
+            return entry == null ? null : entry.copy();
+        }
+    }
+    /**
+     * Add an entry.
+     *
+     * @param id    the entry's fingerprint.
+     * @param entry the entry.
+     */
+    private static void store(ByteBuffer id, Entry entry) {
+        synchronized (ENTRIES) {
+            ENTRIES.put(id, entry);
+        }
+    }
+    /**
+     * Fingerprint of a passphrase, salt and cost setting, used as the cache key.
+     *
+     * @param password    the passphrase.
+     * @param salt        the salt, or null for the encryption entry.
+     * @param memoryShift log2 of the memory cost in KiB.
+     * @param iterations  the number of mixing rounds.
+     * @param len         the key material length in bytes.
+     * @return            the fingerprint, wrapped so that it compares by content.
+     */
+    private static ByteBuffer fingerprint(byte[] password, byte[] salt, int memoryShift, int iterations, int len) {
+        byte[] encoded = SP800185.encodeString(password);
+        byte[] encodedSalt = SP800185.encodeString(salt == null ? new byte[0] : salt);
+        byte[] encodedLen = SP800185.leftEncode(len);
+        byte[] input = new byte[encoded.length + encodedSalt.length + 3 + encodedLen.length];
+        ByteBuffer.wrap(input).put(encoded).put(encodedSalt)
+                .put((byte) (salt == null ? 0 : 1)).put((byte) memoryShift).put((byte) iterations)
+                .put(encodedLen);
+        byte[] id = FINGERPRINT.copy().mac(input, 0, input.length, new byte[FINGERPRINT_LEN]);
+        Arrays.fill(encoded, (byte) 0);
+        Arrays.fill(input, (byte) 0);
+        return ByteBuffer.wrap(id);
+    }
+    /**
+     * Key KMAC256 with fresh random bytes.
+     *
+     * @return the keyed instance.
+     */
+    private static KMAC newFingerprintKey() {
+        byte[] key = new byte[32];
+        RANDOM.nextBytes(key);
+        KMAC kmac = new KMAC(256, key, "KeyCache".getBytes(StandardCharsets.US_ASCII));
+        Arrays.fill(key, (byte) 0);
+        return kmac;
+    }
+    /**
+     * A cached salt and key material.
+     */
+    private static final class Entry {
+        /**
+         * The salt the keys were derived with.
+         */
+        private final byte[] salt;
+        /**
+         * The key material.
+         */
+        private final byte[] keys;
+        /**
+         * When the entry was created (System.nanoTime()).
+         */
+        private final long created = System.nanoTime();
+        /**
+         * Constructor.
+         *
+         * @param salt the salt.
+         * @param keys the key material.
+         */
+        Entry(byte[] salt, byte[] keys) {
+            this.salt = salt;
+            this.keys = keys;
+        }
+        /**
+         * A copy with its own arrays.
+         *
+         * @return the copy.
+         */
+        Entry copy() {
+            return new Entry(salt.clone(), keys.clone());
+        }
+    }
+}
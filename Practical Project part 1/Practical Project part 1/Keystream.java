@@ -0,0 +1,172 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.stream.IntStream;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Seekable SHAKE128 keystream in counter mode.
+ * The stream is cut into segments of SEGMENT bytes and segment i is
+ * SHAKE128(key || nonce || i), with i as 8 little-endian bytes. Any segment can be produced
+ * without the ones before it, so a byte range can be decrypted on its own and a large buffer
+ * can be processed on all cores. Instances are immutable and safe to share between threads.
+ */
+public final class Keystream {
+//********************************* Constants *********************************\\
+    /**
+     * Keystream bytes per counter value.
+     */
+    public static final int SEGMENT = 1 << 14;
+    /**
+     * Security level of the underlying SHAKE.
+     */
+    private static final int SUFFIX = 128;
+    /**
+     * Little-endian long view of a byte array.
+     */
+    private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+     * One sponge per thread.
+     */
+    private static final ThreadLocal<SHA3SHAKE> SPONGES = ThreadLocal.withInitial(SHA3SHAKE::new);
+    /**
+     * The key.
+     */
+    private final byte[] key;
+    /**
+     * The nonce.
+     */
+    private final byte[] nonce;
+    /**
+     * Constructor.
+     *
+     * @param key   the key.
+     * @param nonce the nonce, unique per message under the same key.
+     */
+    public Keystream(byte[] key, byte[] nonce) {
+        this.key = key.clone();
+        this.nonce = nonce.clone();
+    }
+    /**
+     * XOR the keystream into a buffer on the calling thread.
+     * Encryption and decryption are the same operation.
+     *
+     * @param offset the keystream position of buf[off].
+     * @param buf    the buffer to XOR into.
+     * @param off    the index of the first byte.
+     * @param len    the number of bytes.
+     */
+    public void xor(long offset, byte[] buf, int off, int len) {
+        apply(offset, buf, off, len, true);
+    }
+    /**
+     * XOR the keystream into a buffer, spreading the segments across the fork-join pool.
+     *
+     * @param offset the keystream position of buf[off].
+     * @param buf    the buffer to XOR into.
+     * @param off    the index of the first byte.
+     * @param len    the number of bytes.
+     */
+    public void xorParallel(long offset, byte[] buf, int off, int len) {
+        applyParallel(offset, buf, off, len, true);
+    }
+    /**
+     * Write the keystream itself into a buffer, spreading the segments across the fork-join
+     * pool, so it can be produced ahead of the data it will be XORed into.
+     *
+     * @param offset the keystream position of buf[off].
+     * @param buf    the buffer to fill.
+     * @param off    the index of the first byte.
+     * @param len    the number of bytes.
+     */
+    public void fillParallel(long offset, byte[] buf, int off, int len) {
+        applyParallel(offset, buf, off, len, false);
+    }
+    /**
+     * XOR a buffer of keystream into data, eight bytes at a time.
+     *
+     * @param data the data, XORed in place.
+     * @param keys the keystream.
+     * @param len  the number of bytes.
+     */
+    public static void xor(byte[] data, byte[] keys, int len) {
+        Objects.checkFromIndexSize(0, len, data.length);
+        Objects.checkFromIndexSize(0, len, keys.length);
+        int i = 0;
+        for (; i + Long.BYTES <= len; i += Long.BYTES) {
+            LANE.set(data, i, (long) LANE.get(data, i) ^ (long) LANE.get(keys, i));
+        }
+        for (; i < len; i++) {
+            data[i] ^= keys[i];
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * XOR the keystream into a buffer, or write it there, on the calling thread.
+     *
+     * @param offset the keystream position of buf[off].
+     * @param buf    the buffer.
+     * @param off    the index of the first byte.
+     * @param len    the number of bytes.
+     * @param xor    true to XOR into the buffer, false to overwrite it.
+     */
+    private void apply(long offset, byte[] buf, int off, int len, boolean xor) {
+        Objects.checkFromIndexSize(off, len, buf.length);
+        SHA3SHAKE sponge = SPONGES.get();
+        while (len > 0) {
+            long segment = offset / SEGMENT;
+            int inner = (int) (offset % SEGMENT);
+            int n = Math.min(SEGMENT - inner, len);
+            start(sponge, segment);
+            sponge.skip(inner);
+            if (xor) {
+                sponge.squeezeXor(buf, off, n);
+            } else {
+                sponge.squeeze(buf, off, n);
+            }
+            offset += n;
+            off += n;
+            len -= n;
+        }
+    }
+    /**
+     * XOR the keystream into a buffer, or write it there, one segment per fork-join task.
+     *
+     * @param offset the keystream position of buf[off].
+     * @param buf    the buffer.
+     * @param off    the index of the first byte.
+     * @param len    the number of bytes.
+     * @param xor    true to XOR into the buffer, false to overwrite it.
+     */
+    private void applyParallel(long offset, byte[] buf, int off, int len, boolean xor) {
+        Objects.checkFromIndexSize(off, len, buf.length);
+        if (len <= SEGMENT) {
+            apply(offset, buf, off, len, xor);
+            return;
+        }
+        long first = offset / SEGMENT;
+        long last = (offset + len - 1) / SEGMENT;
+        IntStream.rangeClosed(0, (int) (last - first)).parallel().forEach(i -> {
+            long from = Math.max(offset, (first + i) * SEGMENT);
+            long to = Math.min(offset + len, (first + i + 1) * SEGMENT);
+            apply(from, buf, off + (int) (from - offset), (int) (to - from), xor);
+        });
+    }
+    /**
+     * Initialize a sponge at the start of a segment.
+     *
+     * @param sponge  the sponge.
+     * @param segment the counter value.
+     */
+    private void start(SHA3SHAKE sponge, long segment) {
+        byte[] counter = new byte[Long.BYTES];
+        for (int i = 0; i < Long.BYTES; i++) {
+            counter[i] = (byte) (segment >>> (8 * i));
+        }
+        sponge.init(SUFFIX);
+        sponge.absorb(key);
+        sponge.absorb(nonce);
+        sponge.absorb(counter);
+    }
+}
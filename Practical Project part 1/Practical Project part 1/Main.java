@@ -1,22 +1,38 @@
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.SecureRandom;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HexFormat;
+import java.util.Map;
 import java.util.Scanner;
+import javax.crypto.AEADBadTagException;
 /**
  * @author rick_adams.
  * @version 2024 AU.
  * Main program (driver).
  */
 public class Main {
-    private static final SecureRandom RANDOM = new SecureRandom();
     private static final Scanner SCANNER = new Scanner(System.in);
-    private static SHA3SHAKE sha3SHAKE = new SHA3SHAKE();
+    /**
+     * Size of the buffer used to stream files through the sponge.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * ParallelHash block size used by the treehash command.
+     */
+    private static final int TREE_BLOCK_SIZE = 8192;
 
     /**
      * Private constructor.
@@ -30,13 +46,112 @@ public class Main {
      */
     private static void computeHash(String file, int suffix) throws IOException {
         try {
-            byte[] content = Files.readAllBytes(Paths.get(file));
-            byte[] out = SHA3SHAKE.SHA3(suffix, content, null);
+            byte[] out = new FileHasher().hash(Paths.get(file), suffix, null);
             System.out.println(HexFormat.of().formatHex(out));
         } catch (IOException e) {
             throw new IOException("Error with file path: " + file + ": " + e.getMessage());
         }
     }
+    /**
+     *
+     * @param dir          the directory to hash.
+     * @param suffix       the suffix level.
+     * @param manifest     the manifest file (if null or "-", the manifest is printed).
+     * @param index        the rehash index file (if null, every file is hashed).
+     * @throws IOException throws an I/O exception upon inccorect file path, etc.
+     */
+    private static void computeBatchHash(String dir, int suffix, String manifest, String index) throws IOException {
+        try {
+            Map<Path, byte[]> digests = index == null
+                    ? BatchHasher.hashTree(Paths.get(dir), suffix)
+                    : BatchHasher.hashTree(Paths.get(dir), suffix, Paths.get(index));
+            if (manifest == null || manifest.equals("-")) {
+                BatchHasher.writeManifest(digests, new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            } else {
+                try (Writer writer = Files.newBufferedWriter(Paths.get(manifest))) {
+                    BatchHasher.writeManifest(digests, writer);
+                }
+            }
+        } catch (IOException e) {
+            throw new IOException("Error with directory path: " + dir + ": " + e.getMessage());
+        }
+    }
+    /**
+     *
+     * @param file         the file path.
+     * @param mode         128 or 256 for ParallelHash, k12 for KangarooTwelve.
+     * @throws IOException throws an I/O exception upon inccorect file path, etc.
+     */
+    private static void computeTreeHash(String file, String mode) throws IOException {
+        try {
+            byte[] out;
+            if (mode.equals("k12")) {
+                out = KangarooTwelve.hash(Paths.get(file), new byte[0], 256);
+            } else {
+                int suffix = Integer.parseInt(mode);
+                out = ParallelHash.hash(suffix, Paths.get(file), TREE_BLOCK_SIZE, 2 * suffix, new byte[0]);
+            }
+            System.out.println(HexFormat.of().formatHex(out));
+        } catch (IOException e) {
+            throw new IOException("Error with file path: " + file + ": " + e.getMessage());
+        }
+    }
+    /**
+     *
+     * @param action       build, verify, update or proof.
+     * @param file         the file path.
+     * @param extra        the action's arguments: the chunk shift for build, a byte range for
+     *                     verify and update, a chunk index for proof. Malformed or negative
+     *                     numbers print "Error: Argument.".
+     * @throws IOException throws an I/O exception upon inccorect file path, etc.
+     */
+    private static void merkle(String action, String file, String[] extra) throws IOException {
+        Path path = Paths.get(file);
+        Path sidecar = MerkleTree.sidecar(path);
+        try {
+            if (action.equals("build")) {
+                int shift = extra.length > 0 ? Integer.parseInt(extra[0]) : MerkleTree.DEFAULT_CHUNK_SHIFT;
+                MerkleTree tree = MerkleTree.build(path, shift);
+                tree.save(sidecar);
+                System.out.println(HexFormat.of().formatHex(tree.root()));
+                return;
+            }
+            MerkleTree tree = MerkleTree.load(sidecar);
+            long pos = extra.length == 2 ? Long.parseLong(extra[0]) : 0;
+            long len = extra.length == 2 ? Long.parseLong(extra[1]) : Math.max(tree.size(), 1);
+            if (pos < 0 || len < 0) {
+                System.out.println("Error: Argument.");
+                return;
+            }
+            switch (action) {
+                case "verify":
+                    BitSet bad = tree.verify(path, pos, len);
+                    System.out.println(bad.isEmpty() ? "OK" : "Corrupt chunks: " + bad);
+                    break;
+                case "update":
+                    tree.update(path, pos, len);
+                    tree.save(sidecar);
+                    System.out.println(HexFormat.of().formatHex(tree.root()));
+                    break;
+                case "proof":
+                    byte[][] proof = tree.proof(Integer.parseInt(extra[0]));
+                    System.out.println(HexFormat.of().formatHex(tree.root()) + " " + tree.leafCount());
+                    for (byte[] node : proof) {
+                        System.out.println(HexFormat.of().formatHex(node));
+                    }
+                    break;
+                default:
+                    System.out.println("Error: Invalid merkle action. Implemented actions include: build, verify, update, or proof.");
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Error: Argument.");
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            System.out.println("Error: " + e.getMessage());
+        } catch (IOException e) {
+            throw new IOException("Error with file path: " + file + ": " + e.getMessage());
+        }
+    }
     /**
      *
      * @param password      the password.
@@ -48,10 +163,7 @@ public class Main {
             throw new IllegalArgumentException("Length must be a positive integer");
         }
         byte[] content = SCANNER.nextLine().getBytes();
-        sha3SHAKE.init(suffix);
-        sha3SHAKE.absorb(password.getBytes());
-        sha3SHAKE.absorb(content);
-        byte[] mac_user = sha3SHAKE.squeeze(len);
+        byte[] mac_user = ConcurrentSHA3.mac(suffix, password.getBytes(), content, new byte[len]);
         System.out.println(HexFormat.of().formatHex(mac_user));
     }
     /**
@@ -64,15 +176,16 @@ public class Main {
         if (len < 0) {
             throw new IllegalArgumentException("Length must be a positive integer");
         }
-        try {
-            byte[] content = Files.readAllBytes(Paths.get(file));
-            sha3SHAKE.init(suffix);
-            sha3SHAKE.absorb(password.getBytes());
-            sha3SHAKE.absorb(content);
-            byte[] mac_file = sha3SHAKE.squeeze(len);
+        SHA3SHAKE sponge = ConcurrentSHA3.borrow(suffix);
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            sponge.absorb(password.getBytes());
+            in.transferTo(new SpongeOutputStream(sponge));
+            byte[] mac_file = sponge.squeeze(len);
             System.out.println(HexFormat.of().formatHex(mac_file));
         } catch (IOException e) {
             System.err.println("Error with file path: " + file + ": " + e.getMessage());
+        } finally {
+            ConcurrentSHA3.release(sponge);
         }
     }
     /**
@@ -85,30 +198,34 @@ public class Main {
         String output = out;
         if (out == null) {
             output = file + ".enc";
-        } try {
-            byte[] content = Files.readAllBytes(Paths.get(file));
-            byte[] nonce = new byte[16];
-            RANDOM.nextBytes(nonce);
-            byte[] key = SHA3SHAKE.SHAKE(128, password.getBytes(), 128, null);
-            sha3SHAKE.init(128);
-            sha3SHAKE.absorb(nonce);
-            sha3SHAKE.absorb(key);
-            byte[] cipher_text = sha3SHAKE.squeeze(content.length);
-
-            for (int i = 0; i < content.length; i++) {
-                content[i] ^= cipher_text[i];
-            }
-            sha3SHAKE.init(256);
-            sha3SHAKE.absorb(nonce);
-            sha3SHAKE.absorb(key);
-            byte[] mac_encrypted = sha3SHAKE.digest();
-            try (FileOutputStream fos = new FileOutputStream(output)){
-                fos.write(content);
-                fos.write(nonce);
-                fos.write(mac_encrypted);
+        }
+        if (sameFile(Paths.get(file), Paths.get(output))) {
+            System.err.println("Error: the output file must differ from the input file: " + output);
+            return;
+        }
+        // Encrypt into a file of our own and only move it over the output once the container is
+        // complete, so a failure never truncates an existing file or leaves a partial container.
+        Path target = Paths.get(output);
+        Path tmp = null;
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            Path dir = target.toAbsolutePath().getParent();
+            tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+            try (OutputStream fos = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                EncryptedContainer.encrypt(in, fos, password.getBytes(), EncryptedContainer.DEFAULT_CHUNK_SHIFT,
+                        Integer.getInteger("sha3.kdf.memory", SpongeKDF.DEFAULT_MEMORY_SHIFT),
+                        Integer.getInteger("sha3.kdf.iterations", SpongeKDF.DEFAULT_ITERATIONS));
             }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
             System.err.println("Error with file path: " + file + ": " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    System.err.println("Error removing partial output: " + tmp + ": " + e.getMessage());
+                }
+            }
         }
     }
     /**
@@ -120,46 +237,78 @@ public class Main {
     private static void symmetricDecrypt(String file, String password, String out) {
         String output = out;
         if (out == null) {
-            output = file.replaceAll(".enc", "");
+            output = file.endsWith(".enc") ? file.substring(0, file.length() - ".enc".length()) : file + ".dec";
         }
-        try {
-            byte[] file_content = Files.readAllBytes(Paths.get(file));
-            byte[] content = new byte[file_content.length - 48];
-            System.arraycopy(file_content, 0, content, 0, content.length);
-            byte[] nonce = new byte[16];
-            System.arraycopy(file_content, content.length, nonce, 0, content.length);
-            byte[] file_mac = new byte[32];
-            for (int i = 0; i < content.length; i++) {
-                file_mac[i] = file_content[i + content.length + nonce.length];
-            }
-            byte[] key = SHA3SHAKE.SHAKE(128, password.getBytes(), 128, null);
-            // for 256.
-            sha3SHAKE.init(256);
-            sha3SHAKE.absorb(nonce);
-            sha3SHAKE.absorb(key);
-            sha3SHAKE.absorb(content);
-            byte[] mac_encrypted = sha3SHAKE.digest();
-            if (!Arrays.equals(file_mac, mac_encrypted)) {
-                System.err.println("MAC tag verification failed. The cryptogram is invalid or tampered.");
-                return;
-            }
-            // Initialize SHA3SHAKE instance for decryption
-            sha3SHAKE.init(128);
-            sha3SHAKE.absorb(nonce);
-            sha3SHAKE.absorb(key);
-            sha3SHAKE.absorb(content);
-            // Squeeze the cipher_text and decrypt via XOR
-            byte[] cipher_text = sha3SHAKE.squeeze(content.length);
-            for (int i = 0; i < content.length; i++) {
-                content[i] ^= cipher_text[i];
-            }
-            try (FileOutputStream fos = new FileOutputStream(output)){
-                fos.write(content);
+        Path input = Paths.get(file);
+        Path target = Paths.get(output);
+        if (sameFile(input, target)) {
+            System.err.println("Error: the output file must differ from the input file: " + output);
+            return;
+        }
+        // Decrypt into a file of our own and only move it over the output once every tag has
+        // verified, so a failure never leaves unauthenticated plaintext or touches an existing file.
+        Path tmp = null;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(input))) {
+            Path dir = target.toAbsolutePath().getParent();
+            tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+            try (OutputStream fos = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                EncryptedContainer.decrypt(in, fos, password.getBytes());
             }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AEADBadTagException e) {
+            System.err.println("MAC tag verification failed. The cryptogram is invalid or tampered.");
         } catch (Exception e) {
             System.err.println("Error during decryption: " + e.getMessage());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    System.err.println("Error removing partial output: " + tmp + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+    /**
+     * Whether two paths name the same file, either literally or, when both exist, through
+     * links or a different spelling.
+     *
+     * @param a the first path.
+     * @param b the second path.
+     * @return  true if they are the same file.
+     */
+    private static boolean sameFile(Path a, Path b) {
+        if (a.toAbsolutePath().normalize().equals(b.toAbsolutePath().normalize())) {
+            return true;
+        }
+        try {
+            return Files.exists(a) && Files.exists(b) && Files.isSameFile(a, b);
+        } catch (IOException e) {
+            return false;
         }
     }
+    /**
+     * Run the resident server until the process is stopped.
+     * The limits come from -Dsha3.server.connections and -Dsha3.server.inflight (bytes).
+     *
+     * @param address       the address to listen on.
+     * @param allowRemote   true to listen on a TCP host other than loopback.
+     * @throws IOException  if the socket cannot be bound.
+     */
+    private static void serve(String address, boolean allowRemote) throws IOException {
+        HashServer server = new HashServer(HashServer.address(address, allowRemote),
+                Integer.getInteger("sha3.server.connections", HashServer.DEFAULT_CONNECTIONS),
+                Integer.getInteger("sha3.server.inflight", HashServer.DEFAULT_IN_FLIGHT));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server: " + e.getMessage());
+            }
+        }));
+        System.err.println("Listening on " + server.localAddress());
+        server.serve();
+    }
     /**
      * Converts bytes to hex.
      *
@@ -183,6 +332,7 @@ public class Main {
             System.out.println("Error: No arguments provided.");
             return;
         }
+        long start = Metrics.start();
         try {
 
             switch (args[0].toLowerCase()) {
@@ -202,6 +352,48 @@ public class Main {
                         System.out.println("Error: Invalid number of arguments.");
                     }
                     break;
+                case "batchhash":
+                    if (args.length >= 3 && args.length <= 5) {
+                        if (!args[1].matches("224|256|384|512")) {
+                            System.out.println("Error: Invalid security level for hashing function. Implemented security levels include: 224, 256, 384, or 512.");
+                        } else {
+                            computeBatchHash(args[2], Integer.parseInt(args[1]), args.length >= 4 ? args[3] : null,
+                                             args.length == 5 ? args[4] : null);
+                        }
+                    } else if (args.length == 2) {
+                        computeBatchHash(args[1], 512, null, null);
+                    } else if (args.length == 1) {
+                        System.out.println("Error: Please provide path to the directory to hash.");
+                    } else {
+                        System.out.println("Error: Invalid number of arguments.");
+                    }
+                    break;
+                case "treehash":
+                    if (args.length == 3) {
+                        if (!args[1].matches("128|256|k12")) {
+                            System.out.println("Error: Invalid tree hash mode. Implemented modes include: 128, 256 (ParallelHash), or k12 (KangarooTwelve).");
+                        } else {
+                            computeTreeHash(args[2], args[1]);
+                        }
+                    } else if (args.length == 2) {
+                        computeTreeHash(args[1], "k12");
+                    } else if (args.length == 1) {
+                        System.out.println("Error: Please provide path to the file to hash.");
+                    } else {
+                        System.out.println("Error: Invalid number of arguments.");
+                    }
+                    break;
+                case "merkle":
+                    if (args.length == 3 && args[1].matches("build|verify")
+                            || args.length == 4 && args[1].matches("build|proof")
+                            || args.length == 5 && args[1].matches("verify|update")) {
+                        merkle(args[1].toLowerCase(), args[2], Arrays.copyOfRange(args, 3, args.length));
+                    } else if (args.length < 3) {
+                        System.out.println("Error: Please provide a merkle action (build, verify, update, or proof) and the file path.");
+                    } else {
+                        System.out.println("Error: Invalid number of arguments.");
+                    }
+                    break;
                 case "mac":
                     if (args.length == 5) {
                         if (!args[1].matches("128|256")) {
@@ -245,11 +437,22 @@ public class Main {
                     if (args.length == 4) {
                         symmetricDecrypt(args[2], args[1], args[3]);
                     } else if (args.length == 3) {
-                        symmetricEncrypt(args[2], args[1], null);
+                        symmetricDecrypt(args[2], args[1], null);
                     } else {
                         System.out.println("Error: Invalid number of arguments.");
                     }
                     break;
+                case "serve":
+                    if (args.length == 2 || args.length == 3 && args[2].equals("--allow-remote")) {
+                        try {
+                            serve(args[1], args.length == 3);
+                        } catch (IOException | IllegalArgumentException e) {
+                            System.err.println("Error: " + e.getMessage());
+                        }
+                    } else {
+                        System.out.println("Error: Please provide the address to listen on (unix:<path>, <port> or <host>:<port>) [--allow-remote].");
+                    }
+                    break;
                 default:
                     System.out.println("Error: Argument.");
                     break;
@@ -257,6 +460,11 @@ public class Main {
         }
         catch (FileNotFoundException e) {
             System.err.println("Error: File not found. Please provide correct file path." + e.getMessage());
+        } finally {
+            if (Metrics.ENABLED) {
+                Metrics.stop(args[0].toLowerCase(), start);
+                Metrics.report(System.err);
+            }
         }
     }
 }
@@ -0,0 +1,443 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Merkle tree of SHA3-256 nodes over the fixed-size chunks of a file.
+ * Leaves are SHA3-256(0x00 || chunk), hashed in parallel one memory-mapped window at a time;
+ * inner nodes are SHA3-256(0x01 || left || right), and an odd node at the end of a level is
+ * carried up unchanged. A change to a byte range costs the chunks it touches plus one node
+ * per level, corruption can be pinned to single chunks, and any chunk can be proven against
+ * the root with one sibling per level.
+ *
+ * Sidecar layout (all integers big-endian):
+ *   magic "S3MT" | version (1) | log2 of the chunk size (1) | file size (8) | leaf count (4)
+ *   | every level's nodes (32 bytes each), leaves first and the root last
+ */
+public final class MerkleTree {
+//********************************* Constants *********************************\\
+    /**
+     * Node length in bytes.
+     */
+    static final int NODE = 32;
+    /**
+     * Default log2 of the chunk size (64 KiB).
+     */
+    static final int DEFAULT_CHUNK_SHIFT = 16;
+    /**
+     * Smallest and largest accepted log2 of the chunk size.
+     */
+    private static final int MIN_CHUNK_SHIFT = 10, MAX_CHUNK_SHIFT = 26;
+    /**
+     * Domain separation prefix of a leaf.
+     */
+    private static final byte LEAF_PREFIX = 0x00;
+    /**
+     * Domain separation prefix of an inner node.
+     */
+    private static final byte NODE_PREFIX = 0x01;
+    /**
+     * File signature.
+     */
+    private static final byte[] MAGIC = "S3MT".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Current format version.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Log2 of the chunk size.
+     */
+    private final int chunkShift;
+    /**
+     * Size of the file the tree describes.
+     */
+    private long size;
+    /**
+     * The nodes of each level, leaves first; the last level holds only the root.
+     */
+    private byte[][] levels;
+    /**
+     * Constructor.
+     *
+     * @param chunkShift log2 of the chunk size.
+     * @param size       the file size.
+     * @param levels     the nodes of each level.
+     */
+    private MerkleTree(int chunkShift, long size, byte[][] levels) {
+        this.chunkShift = chunkShift;
+        this.size = size;
+        this.levels = levels;
+    }
+    /**
+     * Build the tree of a file.
+     *
+     * @param file       the file.
+     * @param chunkShift log2 of the chunk size, 10 to 26.
+     * @return           the tree.
+     * @throws IOException if the file cannot be read.
+     */
+    public static MerkleTree build(Path file, int chunkShift) throws IOException {
+        if (chunkShift < MIN_CHUNK_SHIFT || chunkShift > MAX_CHUNK_SHIFT) {
+            throw new IllegalArgumentException("Invalid chunk size.");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            TreeHashing.Body body = TreeHashing.of(channel);
+            MerkleTree tree = new MerkleTree(chunkShift, body.size(), new byte[0][]);
+            tree.resize(body.size());
+            tree.hashLeaves(body, 0, tree.leafCount());
+            tree.hashParents(0, tree.leafCount());
+            return tree;
+        }
+    }
+    /**
+     * Read a tree from its sidecar file.
+     *
+     * @param sidecar the sidecar file.
+     * @return        the tree.
+     * @throws IOException if the sidecar cannot be read or is malformed.
+     */
+    public static MerkleTree load(Path sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.read() != VERSION) {
+                throw new IOException("Not a Merkle tree sidecar: " + sidecar);
+            }
+            int chunkShift = in.read();
+            long size = in.readLong();
+            int leaves = in.readInt();
+            if (chunkShift < MIN_CHUNK_SHIFT || chunkShift > MAX_CHUNK_SHIFT || size < 0
+                    || leaves != leafCount(size, chunkShift)) {
+                throw new IOException("Malformed Merkle tree sidecar: " + sidecar);
+            }
+            MerkleTree tree = new MerkleTree(chunkShift, size, new byte[0][]);
+            tree.resize(size);
+            for (byte[] level : tree.levels) {
+                in.readFully(level);
+            }
+            if (in.read() >= 0) {
+                throw new IOException("Malformed Merkle tree sidecar: " + sidecar);
+            }
+            return tree;
+        }
+    }
+    /**
+     * Write the tree to its sidecar file, atomically replacing any previous one.
+     *
+     * @param sidecar the sidecar file.
+     * @throws IOException on a write error.
+     */
+    public void save(Path sidecar) throws IOException {
+        Path dir = sidecar.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, sidecar.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                out.write(MAGIC);
+                out.write(VERSION);
+                out.write(chunkShift);
+                out.writeLong(size);
+                out.writeInt(leafCount());
+                for (byte[] level : levels) {
+                    out.write(level);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+    /**
+     * The default sidecar of a file: the file name with ".merkle" appended.
+     *
+     * @param file the file.
+     * @return     the sidecar path.
+     */
+    public static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + ".merkle");
+    }
+    /**
+     * The root node.
+     *
+     * @return a copy of the root.
+     */
+    public byte[] root() {
+        return levels[levels.length - 1].clone();
+    }
+    /**
+     * Number of leaves (chunks); an empty file has one empty chunk.
+     *
+     * @return the leaf count.
+     */
+    public int leafCount() {
+        return levels[0].length / NODE;
+    }
+    /**
+     * Size of the file the tree describes.
+     *
+     * @return the size in bytes.
+     */
+    public long size() {
+        return size;
+    }
+    /**
+     * Log2 of the chunk size.
+     *
+     * @return the chunk shift.
+     */
+    public int chunkShift() {
+        return chunkShift;
+    }
+    /**
+     * Re-hash the chunks of a file that overlap a byte range and compare them with the tree.
+     * Only those chunks are read.
+     *
+     * @param file the file.
+     * @param pos  the first byte of the range.
+     * @param len  the length of the range.
+     * @return     the indexes of the chunks that no longer match.
+     * @throws IOException if the file cannot be read or its size has changed.
+     */
+    public BitSet verify(Path file, long pos, long len) throws IOException {
+        BitSet bad = new BitSet();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            TreeHashing.Body body = TreeHashing.of(channel);
+            if (body.size() != size) {
+                throw new IOException("File size changed from " + size + " to " + body.size() + ".");
+            }
+            int first = firstLeaf(pos);
+            int end = endLeaf(pos, len);
+            byte[] fresh = hashRange(body, first, end);
+            for (int i = first; i < end; i++) {
+                if (!TagVerifier.isEqual(fresh, (i - first) * NODE, levels[0], i * NODE, NODE)) {
+                    bad.set(i);
+                }
+            }
+        }
+        return bad;
+    }
+    /**
+     * Bring the tree up to date after a byte range of the file was rewritten, or after the file
+     * grew or shrank. Re-hashes the chunks the range touches (and, if the size changed, every
+     * chunk from the old end of the file) and one node per level above them.
+     *
+     * @param file the file.
+     * @param pos  the first byte that changed.
+     * @param len  the number of bytes that changed.
+     * @throws IOException if the file cannot be read.
+     */
+    public void update(Path file, long pos, long len) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            TreeHashing.Body body = TreeHashing.of(channel);
+            long newSize = body.size();
+            int first;
+            int end;
+            if (newSize == size) {
+                first = firstLeaf(pos);
+                end = endLeaf(pos, len);
+            } else {
+                first = Math.min(firstLeaf(Math.min(pos, size)), leafCount(newSize, chunkShift) - 1);
+                resize(newSize);
+                end = leafCount();
+            }
+            hashLeaves(body, first, end);
+            hashParents(first, end);
+        }
+    }
+    /**
+     * Inclusion proof of a chunk: the sibling of each node on its path to the root, bottom up.
+     * Levels where the node has no sibling (it is carried up unchanged) contribute nothing.
+     *
+     * @param leaf the chunk index.
+     * @return     the sibling nodes.
+     */
+    public byte[][] proof(int leaf) {
+        if (leaf < 0 || leaf >= leafCount()) {
+            throw new IndexOutOfBoundsException("No such chunk: " + leaf);
+        }
+        List<byte[]> siblings = new ArrayList<>();
+        int index = leaf;
+        for (int k = 0; k < levels.length - 1; k++) {
+            int sibling = index ^ 1;
+            if (sibling < levels[k].length / NODE) {
+                siblings.add(Arrays.copyOfRange(levels[k], sibling * NODE, (sibling + 1) * NODE));
+            }
+            index >>>= 1;
+        }
+        return siblings.toArray(new byte[0][]);
+    }
+    /**
+     * Check an inclusion proof.
+     *
+     * @param root   the trusted root.
+     * @param leaves the number of leaves in the tree.
+     * @param leaf   the chunk index.
+     * @param chunk  the chunk's contents.
+     * @param proof  the sibling nodes, as returned by proof.
+     * @return       true if the chunk is part of the tree with this root.
+     */
+    public static boolean verifyProof(byte[] root, int leaves, int leaf, byte[] chunk, byte[][] proof) {
+        if (leaf < 0 || leaf >= leaves) {
+            return false;
+        }
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        sponge.init(256);
+        sponge.absorb(new byte[] {LEAF_PREFIX});
+        sponge.absorb(chunk);
+        byte[] node = sponge.digest();
+        int index = leaf;
+        int width = leaves;
+        int used = 0;
+        while (width > 1) {
+            int sibling = index ^ 1;
+            if (sibling < width) {
+                if (used == proof.length) {
+                    return false;
+                }
+                byte[] other = proof[used++];
+                sponge.init(256);
+                sponge.absorb(new byte[] {NODE_PREFIX});
+                sponge.absorb((index & 1) == 0 ? node : other);
+                sponge.absorb((index & 1) == 0 ? other : node);
+                node = sponge.digest();
+            }
+            index >>>= 1;
+            width = (width + 1) >>> 1;
+        }
+        return used == proof.length && MessageDigest.isEqual(node, root);
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Number of leaves of a file.
+     *
+     * @param size       the file size.
+     * @param chunkShift log2 of the chunk size.
+     * @return           the leaf count (at least 1).
+     */
+    private static int leafCount(long size, int chunkShift) {
+        long count = Math.max(1, (size + (1L << chunkShift) - 1) >>> chunkShift);
+        if (count > Integer.MAX_VALUE / NODE) {
+            throw new IllegalArgumentException("File too large for this chunk size.");
+        }
+        return (int) count;
+    }
+    /**
+     * Reallocate the levels for a new file size, keeping the nodes that still fit.
+     *
+     * @param newSize the new file size.
+     */
+    private void resize(long newSize) {
+        List<byte[]> sized = new ArrayList<>();
+        int width = leafCount(newSize, chunkShift);
+        for (int k = 0; ; k++) {
+            byte[] old = k < levels.length ? levels[k] : new byte[0];
+            sized.add(Arrays.copyOf(old, width * NODE));
+            if (width == 1) {
+                break;
+            }
+            width = (width + 1) >>> 1;
+        }
+        levels = sized.toArray(new byte[0][]);
+        size = newSize;
+    }
+    /**
+     * Index of the chunk holding a byte.
+     *
+     * @param pos the byte offset.
+     * @return    the chunk index, clamped to the last chunk.
+     */
+    private int firstLeaf(long pos) {
+        return (int) Math.min(Math.max(pos, 0) >>> chunkShift, leafCount() - 1);
+    }
+    /**
+     * Index after the last chunk that a byte range touches.
+     *
+     * @param pos the first byte of the range.
+     * @param len the length of the range.
+     * @return    the end chunk index (exclusive), at least one past firstLeaf(pos).
+     */
+    private int endLeaf(long pos, long len) {
+        long last = Math.max(pos, 0) + Math.max(len, 1) - 1;
+        return (int) Math.min((last >>> chunkShift) + 1, leafCount());
+    }
+    /**
+     * Hash a run of leaves into level 0.
+     *
+     * @param body  the file.
+     * @param first the first leaf.
+     * @param end   the end leaf (exclusive).
+     * @throws IOException if the file cannot be read.
+     */
+    private void hashLeaves(TreeHashing.Body body, int first, int end) throws IOException {
+        byte[] fresh = hashRange(body, first, end);
+        System.arraycopy(fresh, 0, levels[0], first * NODE, fresh.length);
+    }
+    /**
+     * Hash a run of leaves, one memory-mapped window at a time.
+     *
+     * @param body  the file.
+     * @param first the first leaf.
+     * @param end   the end leaf (exclusive).
+     * @return      the leaf nodes.
+     * @throws IOException if the file cannot be read.
+     */
+    private byte[] hashRange(TreeHashing.Body body, int first, int end) throws IOException {
+        int chunk = 1 << chunkShift;
+        int perWindow = TreeHashing.leavesPerWindow(chunk);
+        byte[] out = new byte[(end - first) * NODE];
+        for (int i = first; i < end; i += perWindow) {
+            int count = Math.min(perWindow, end - i);
+            long pos = (long) i << chunkShift;
+            int len = (int) Math.min((long) count * chunk, body.size() - pos);
+            ByteBuffer window = len > 0 ? body.slice(pos, len) : ByteBuffer.allocate(0);
+            TreeHashing.sha3Leaves(window, chunk, count, LEAF_PREFIX, out, (i - first) * NODE);
+        }
+        return out;
+    }
+    /**
+     * Recompute the ancestors of a run of leaves, level by level up to the root.
+     *
+     * @param first the first changed leaf.
+     * @param end   the end changed leaf (exclusive).
+     */
+    private void hashParents(int first, int end) {
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        byte[] prefix = {NODE_PREFIX};
+        for (int k = 1; k < levels.length; k++) {
+            first >>>= 1;
+            end = (end + 1) >>> 1;
+            byte[] below = levels[k - 1];
+            int width = below.length / NODE;
+            for (int i = first; i < end; i++) {
+                int left = 2 * i;
+                if (left + 1 < width) {
+                    sponge.init(256);
+                    sponge.absorb(prefix);
+                    sponge.absorb(below, left * NODE, 2 * NODE);
+                    sponge.digest(ByteBuffer.wrap(levels[k], i * NODE, NODE));
+                } else {
+                    System.arraycopy(below, left * NODE, levels[k], i * NODE, NODE);
+                }
+            }
+        }
+    }
+}
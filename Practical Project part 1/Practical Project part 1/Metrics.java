@@ -0,0 +1,244 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Opt-in metrics for the sponge and the Main operations, enabled with -Dsha3.metrics=true.
+ * ENABLED is a static final constant, so with metrics off the JIT folds every
+ * "if (Metrics.ENABLED)" guard in the hot loops away. With metrics on, counters are
+ * LongAdders, which stay cheap under contention, and are published over JMX and to listeners.
+ */
+public final class Metrics implements MetricsMXBean {
+//********************************* Constants *********************************\\
+    /**
+     * True if metrics are collected (system property sha3.metrics).
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("sha3.metrics");
+    /**
+     * JMX name of the MBean.
+     */
+    static final String OBJECT_NAME = "SHA3SHAKE:type=Metrics";
+    /**
+     * Number of latency buckets (one per power of two of nanoseconds).
+     */
+    private static final int BUCKETS = 64;
+    /**
+     * Keccak permutations.
+     */
+    private static final LongAdder PERMUTATIONS = new LongAdder();
+    /**
+     * Bytes absorbed.
+     */
+    private static final LongAdder ABSORBED = new LongAdder();
+    /**
+     * Bytes squeezed.
+     */
+    private static final LongAdder SQUEEZED = new LongAdder();
+    /**
+     * Latency histograms by operation name.
+     */
+    private static final Map<String, LongAdder[]> LATENCY = new ConcurrentHashMap<>();
+    /**
+     * Registered listeners.
+     */
+    private static final CopyOnWriteArrayList<MetricsListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(new Metrics(), new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                System.err.println("Metrics MBean not registered: " + e.getMessage());
+            }
+        }
+    }
+    /**
+     * Private constructor (the MBean instance).
+     */
+    private Metrics() {}
+    /**
+     * Count one permutation. Callers guard with ENABLED.
+     */
+    static void permutation() {
+        PERMUTATIONS.increment();
+    }
+    /**
+     * Count absorbed bytes. Callers guard with ENABLED.
+     *
+     * @param n number of bytes.
+     */
+    static void absorbed(long n) {
+        ABSORBED.add(n);
+    }
+    /**
+     * Count squeezed bytes. Callers guard with ENABLED.
+     *
+     * @param n number of bytes.
+     */
+    static void squeezed(long n) {
+        SQUEEZED.add(n);
+    }
+    /**
+     * Start timing an operation.
+     *
+     * @return the start time, or 0 if metrics are off.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+    /**
+     * Finish timing an operation: record its latency and notify the listeners.
+     *
+     * @param name  the operation name.
+     * @param start the value returned by start().
+     */
+    public static void stop(String name, long start) {
+        if (!ENABLED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        LongAdder[] histogram = LATENCY.computeIfAbsent(name, k -> newHistogram());
+        histogram[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+        for (MetricsListener listener : LISTENERS) {
+            listener.operation(name, nanos);
+        }
+    }
+    /**
+     * Register a listener for completed operations.
+     *
+     * @param listener the listener.
+     */
+    public static void addListener(MetricsListener listener) {
+        LISTENERS.add(listener);
+    }
+    /**
+     * Remove a listener.
+     *
+     * @param listener the listener.
+     */
+    public static void removeListener(MetricsListener listener) {
+        LISTENERS.remove(listener);
+    }
+    /**
+     * The current metrics, as the MBean sees them.
+     *
+     * @return the view.
+     */
+    public static MetricsMXBean snapshot() {
+        return new Metrics();
+    }
+    /**
+     * Print a summary of the counters and the operation latencies.
+     *
+     * @param out the stream to print to.
+     */
+    public static void report(PrintStream out) {
+        Metrics view = new Metrics();
+        out.printf("permutations %d, absorbed %d B, squeezed %d B%n",
+                view.getPermutations(), view.getBytesAbsorbed(), view.getBytesSqueezed());
+        for (Map.Entry<String, long[]> e : view.getLatencyHistograms().entrySet()) {
+            long[] histogram = e.getValue();
+            long count = 0;
+            int max = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += histogram[i];
+                if (histogram[i] > 0) {
+                    max = i;
+                }
+            }
+            out.printf("%s: %d op(s), slowest under %.3f ms%n", e.getKey(), count, Math.pow(2, max + 1) / 1e6);
+        }
+    }
+    /**
+     * Keccak permutations run since start or the last reset.
+     *
+     * @return the count.
+     */
+    @Override
+    public long getPermutations() {
+        return PERMUTATIONS.sum();
+    }
+    /**
+     * Bytes absorbed by all sponges.
+     *
+     * @return the count.
+     */
+    @Override
+    public long getBytesAbsorbed() {
+        return ABSORBED.sum();
+    }
+    /**
+     * Bytes squeezed or digested from all sponges.
+     *
+     * @return the count.
+     */
+    @Override
+    public long getBytesSqueezed() {
+        return SQUEEZED.sum();
+    }
+    /**
+     * Number of completed operations, by name.
+     *
+     * @return the counts.
+     */
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, long[]> e : getLatencyHistograms().entrySet()) {
+            long count = 0;
+            for (long n : e.getValue()) {
+                count += n;
+            }
+            counts.put(e.getKey(), count);
+        }
+        return counts;
+    }
+    /**
+     * Latency histograms, by operation name; bucket i counts 2^i to 2^(i+1) - 1 ns.
+     *
+     * @return the histograms.
+     */
+    @Override
+    public Map<String, long[]> getLatencyHistograms() {
+        Map<String, long[]> histograms = new TreeMap<>();
+        for (Map.Entry<String, LongAdder[]> e : LATENCY.entrySet()) {
+            long[] histogram = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = e.getValue()[i].sum();
+            }
+            histograms.put(e.getKey(), histogram);
+        }
+        return histograms;
+    }
+    /**
+     * Zero every counter and histogram.
+     */
+    @Override
+    public void reset() {
+        PERMUTATIONS.reset();
+        ABSORBED.reset();
+        SQUEEZED.reset();
+        LATENCY.clear();
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * A new, empty latency histogram.
+     *
+     * @return the buckets.
+     */
+    private static LongAdder[] newHistogram() {
+        LongAdder[] histogram = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Receives a callback for every timed operation while metrics are enabled.
+ * Register with Metrics.addListener; callbacks run on the thread that ran the operation.
+ */
+public interface MetricsListener {
+    /**
+     * An operation finished.
+     *
+     * @param name  the operation name (e.g. computehash, mac, encrypt, decrypt).
+     * @param nanos the elapsed time in nanoseconds.
+     */
+    void operation(String name, long nanos);
+}
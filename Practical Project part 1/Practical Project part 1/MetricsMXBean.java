@@ -0,0 +1,43 @@
+import java.util.Map;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * JMX view of the sponge and operation metrics, registered as "SHA3SHAKE:type=Metrics".
+ */
+public interface MetricsMXBean {
+    /**
+     * Keccak permutations run since start or the last reset.
+     *
+     * @return the count.
+     */
+    long getPermutations();
+    /**
+     * Bytes absorbed by all sponges.
+     *
+     * @return the count.
+     */
+    long getBytesAbsorbed();
+    /**
+     * Bytes squeezed or digested from all sponges.
+     *
+     * @return the count.
+     */
+    long getBytesSqueezed();
+    /**
+     * Number of completed operations, by name.
+     *
+     * @return the counts.
+     */
+    Map<String, Long> getOperationCounts();
+    /**
+     * Latency histograms, by operation name. Bucket i counts the operations that took
+     * from 2^i to 2^(i+1) - 1 nanoseconds.
+     *
+     * @return the histograms.
+     */
+    Map<String, long[]> getLatencyHistograms();
+    /**
+     * Zero every counter and histogram.
+     */
+    void reset();
+}
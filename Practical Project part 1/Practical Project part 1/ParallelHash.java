@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * ParallelHash128/256 from NIST SP 800-185.
+ * The input is split into blocks of B bytes, each block is hashed with SHAKE on its own
+ * (in parallel), and the chaining values are combined with cSHAKE. Files are read one
+ * memory-mapped window at a time, so memory use does not grow with the input.
+ */
+public final class ParallelHash {
+//********************************* Constants *********************************\\
+    /**
+     * Function-name string for cSHAKE.
+     */
+    private static final byte[] NAME = "ParallelHash".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Private constructor.
+     */
+    private ParallelHash() {}
+    /**
+     * Compute ParallelHash-<128,256> on input X.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param X      data to be hashed
+     * @param B      block size in bytes
+     * @param L      desired output length in bits (must be a multiple of 8)
+     * @param S      customization string
+     * @return       the output, L / 8 bytes.
+     */
+    public static byte[] hash(int suffix, byte[] X, int B, int L, byte[] S) {
+        try {
+            return hash(suffix, TreeHashing.of(X), B, L, S);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Compute ParallelHash-<128,256> on the contents of a file.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param file   the file to be hashed
+     * @param B      block size in bytes
+     * @param L      desired output length in bits (must be a multiple of 8)
+     * @param S      customization string
+     * @return       the output, L / 8 bytes.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] hash(int suffix, Path file, int B, int L, byte[] S) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(suffix, TreeHashing.of(channel), B, L, S);
+        }
+    }
+    /**
+     * Check the implementation against the NIST SP 800-185 sample values.
+     *
+     * @return true if every sample matches.
+     */
+    public static boolean selfTest() {
+        HexFormat hex = HexFormat.of();
+        byte[] X = hex.parseHex("000102030405060710111213141516172021222324252627");
+        byte[] S = "Parallel Data".getBytes(StandardCharsets.US_ASCII);
+        return Arrays.equals(hash(128, X, 8, 256, new byte[0]), hex.parseHex(
+                        "ba8dc1d1d979331d3f813603c67f72609ab5e44b94a0b8f9af46514454a2b4f5"))
+                && Arrays.equals(hash(128, X, 8, 256, S), hex.parseHex(
+                        "fc484dcb3f84dceedc353438151bee58157d6efed0445a81f165e495795b7206"))
+                && Arrays.equals(hash(256, X, 8, 512, new byte[0]), hex.parseHex(
+                        "bc1ef124da34495e948ead207dd9842235da432d2bbc54b4c110e64c451105531b7f2a3e0ce055c02805e7c2de1fb746af97a1dd01f43b824e31b87612410429"))
+                && Arrays.equals(hash(256, X, 8, 512, S), hex.parseHex(
+                        "cdf15289b54f6212b4bc270528b49526006dd9b54e2b6add1ef6900dda3963bb33a72491f236969ca8afaea29c682d47a393c065b38e29fae651a2091c833110"));
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * ParallelHash over any input view.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param X      the input
+     * @param B      block size in bytes
+     * @param L      desired output length in bits
+     * @param S      customization string
+     * @return       the output, L / 8 bytes.
+     * @throws IOException if the input cannot be read.
+     */
+    private static byte[] hash(int suffix, TreeHashing.Body X, int B, int L, byte[] S) throws IOException {
+        if (B <= 0) {
+            throw new IllegalArgumentException("Block size must be a positive integer");
+        }
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8");
+        }
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        CSHAKE.init(sponge, suffix, NAME, S);
+        sponge.absorb(SP800185.leftEncode(B));
+
+        long size = X.size();
+        int cvLen = suffix / 4;
+        int perWindow = TreeHashing.leavesPerWindow(B);
+        byte[] cvs = new byte[perWindow * cvLen];
+        for (long pos = 0; pos < size; pos += (long) perWindow * B) {
+            int len = (int) Math.min((long) perWindow * B, size - pos);
+            int count = (int) (((long) len + B - 1) / B);
+            TreeHashing.leaves(X.slice(pos, len), B, count, suffix, SHA3SHAKE.KECCAKF_ROUNDS,
+                               SHA3SHAKE.SHAKE_PAD, cvs, cvLen);
+            sponge.absorb(cvs, 0, count * cvLen);
+        }
+        sponge.absorb(SP800185.rightEncode((size + B - 1) / B));
+        sponge.absorb(SP800185.rightEncode(L));
+        return sponge.squeeze(L / 8);
+    }
+}
@@ -0,0 +1,183 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * SHA-3 over many independent messages at once, on the multi-buffer engine KeccakEngines picks
+ * (KeccakVector where SIMD pays off, KeccakInterleaved otherwise).
+ * Messages are sorted by length and hashed in groups of the engine's width, so the states of
+ * a group need roughly the same number of blocks and advance in lockstep.
+ */
+public final class SHA3Batch {
+//********************************* Constants *********************************\\
+    /**
+     * Little-endian view of a byte array as 64-bit lanes.
+     */
+    private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+     * Private constructor.
+     */
+    private SHA3Batch() {}
+    /**
+     * Compute SHA-3-<224,256,384,512> of every input.
+     *
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param inputs the messages.
+     * @param outs   one hash value buffer per message (null entries are allocated).
+     * @return       the outs array.
+     */
+    public static byte[][] hashBatch(int suffix, byte[][] inputs, byte[][] outs) {
+        return hashBatch(KeccakEngines.multi(), suffix, inputs, outs);
+    }
+    /**
+     * Compute SHA-3-<224,256,384,512> of every input on a given multi-buffer engine.
+     *
+     * @param engine the engine.
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param inputs the messages.
+     * @param outs   one hash value buffer per message (null entries are allocated).
+     * @return       the outs array.
+     */
+    public static byte[][] hashBatch(KeccakMultiEngine engine, int suffix, byte[][] inputs, byte[][] outs) {
+        if (suffix != 224 && suffix != 256 && suffix != 384 && suffix != 512) {
+            throw new IllegalArgumentException("Invalid suffix.");
+        }
+        if (inputs.length != outs.length) {
+            throw new IllegalArgumentException("Inputs and outputs differ in count.");
+        }
+        for (int i = 0; i < outs.length; i++) {
+            if (outs[i] == null) {
+                outs[i] = new byte[suffix / 8];
+            } else if (outs[i].length != suffix / 8) {
+                throw new IllegalArgumentException("Invalid buffer length.");
+            }
+        }
+        int rate = (1600 - 2 * suffix) / 8;
+        // Sort by length, carrying the index in the low half of each key.
+        long[] keys = new long[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            keys[i] = (long) inputs[i].length << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        int ways = engine.ways();
+        long[] states = new long[25 * ways];
+        int[] group = new int[ways];
+        for (int g = 0; g < order.length; g += ways) {
+            int m = Math.min(ways, order.length - g);
+            System.arraycopy(order, g, group, 0, m);
+            hashGroup(engine, states, rate, inputs, outs, group, m);
+        }
+        return outs;
+    }
+    /**
+     * Check hashBatch on an engine against SHA3SHAKE.SHA3 on random messages of random lengths.
+     *
+     * @param engine the engine under test.
+     * @param suffix SHA-3 suffix.
+     * @param trials the number of messages.
+     * @param seed   the seed for the messages.
+     * @return       true if every batch digest matched the single-message digest.
+     */
+    public static boolean agrees(KeccakMultiEngine engine, int suffix, int trials, long seed) {
+        Random random = new Random(seed);
+        byte[][] inputs = new byte[trials][];
+        for (int i = 0; i < trials; i++) {
+            inputs[i] = new byte[random.nextInt(4 * 168)];
+            random.nextBytes(inputs[i]);
+        }
+        byte[][] outs = hashBatch(engine, suffix, inputs, new byte[trials][]);
+        for (int i = 0; i < trials; i++) {
+            if (!Arrays.equals(outs[i], SHA3SHAKE.SHA3(suffix, inputs[i], null))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Hash up to the engine's width of messages together.
+     * Every state is permuted once per block of the longest message; a state whose message
+     * has run out has already had its digest copied out, so the extra permutations are harmless.
+     *
+     * @param engine the multi-buffer engine.
+     * @param states the interleaved states.
+     * @param rate   the rate in bytes.
+     * @param inputs all messages.
+     * @param outs   all output buffers.
+     * @param group  indices of the messages in this group.
+     * @param m      number of messages in this group.
+     */
+    private static void hashGroup(KeccakMultiEngine engine, long[] states, int rate,
+                                  byte[][] inputs, byte[][] outs, int[] group, int m) {
+        Arrays.fill(states, 0L);
+        int ways = engine.ways();
+        int blocks = 0;
+        for (int k = 0; k < m; k++) {
+            blocks = Math.max(blocks, inputs[group[k]].length / rate + 1);
+        }
+        for (int blk = 0; blk < blocks; blk++) {
+            int pos = blk * rate;
+            for (int k = 0; k < m; k++) {
+                byte[] data = inputs[group[k]];
+                int last = data.length / rate;
+                if (blk < last) {
+                    xorIn(states, ways, k, data, pos, rate);
+                } else if (blk == last) {
+                    int rem = data.length - pos;
+                    xorIn(states, ways, k, data, pos, rem);
+                    states[(rem >>> 3) * ways + k] ^= SHA3SHAKE.SHA3_PAD << ((rem & 7) << 3);
+                    states[((rate - 1) >>> 3) * ways + k] ^= 0x80L << (((rate - 1) & 7) << 3);
+                }
+            }
+            engine.permute(states);
+            for (int k = 0; k < m; k++) {
+                if (blk == inputs[group[k]].length / rate) {
+                    extract(states, ways, k, outs[group[k]]);
+                }
+            }
+        }
+    }
+    /**
+     * XOR bytes into the start of one interleaved state, a whole lane at a time.
+     *
+     * @param states the interleaved states.
+     * @param ways   the number of interleaved states.
+     * @param k      the state to update.
+     * @param data   the input buffer.
+     * @param off    the index of the first input byte.
+     * @param count  the number of bytes (at most one rate block).
+     */
+    private static void xorIn(long[] states, int ways, int k, byte[] data, int off, int count) {
+        int lanes = count >>> 3;
+        for (int i = 0; i < lanes; i++) {
+            states[i * ways + k] ^= (long) LANE.get(data, off + (i << 3));
+        }
+        for (int j = lanes << 3; j < count; j++) {
+            states[(j >>> 3) * ways + k] ^= (long) (data[off + j] & 0xFF) << ((j & 7) << 3);
+        }
+    }
+    /**
+     * Copy the start of one interleaved state into a digest buffer.
+     *
+     * @param states the interleaved states.
+     * @param ways   the number of interleaved states.
+     * @param k      the state to read.
+     * @param out    the digest buffer.
+     */
+    private static void extract(long[] states, int ways, int k, byte[] out) {
+        int lanes = out.length >>> 3;
+        for (int i = 0; i < lanes; i++) {
+            LANE.set(out, i << 3, states[i * ways + k]);
+        }
+        for (int j = lanes << 3; j < out.length; j++) {
+            out[j] = (byte) (states[(j >>> 3) * ways + k] >>> ((j & 7) << 3));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.security.MessageDigest;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * java.security.MessageDigest adapter for the SHA-3 functions of SHA3SHAKE.
+ * Lets code written against the JCA API (DigestInputStream, DigestOutputStream, ...)
+ * use this implementation incrementally.
+ */
+public class SHA3MessageDigest extends MessageDigest {
+    /**
+     * SHA-3 suffix (digest length in bits).
+     */
+    private final int suffix;
+    /**
+     * The sponge being fed.
+     */
+    private final SHA3SHAKE sponge = new SHA3SHAKE();
+    /**
+     * Scratch buffer for single-byte updates.
+     */
+    private final byte[] one = new byte[1];
+    /**
+     * Constructor.
+     *
+     * @param suffix SHA-3 suffix, one of 224, 256, 384, or 512.
+     */
+    public SHA3MessageDigest(int suffix) {
+        super("SHA3-" + suffix);
+        if (suffix != 224 && suffix != 256 && suffix != 384 && suffix != 512) {
+            throw new IllegalArgumentException("Invalid suffix.");
+        }
+        this.suffix = suffix;
+        sponge.init(suffix);
+    }
+    /**
+     * Absorb a single byte.
+     *
+     * @param input the byte.
+     */
+    @Override
+    protected void engineUpdate(byte input) {
+        one[0] = input;
+        sponge.absorb(one, 0, 1);
+    }
+    /**
+     * Absorb a run of bytes.
+     *
+     * @param input  the data.
+     * @param offset the index of the first byte.
+     * @param len    the byte count.
+     */
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        sponge.absorb(input, offset, len);
+    }
+    /**
+     * Finish the hash and reset for the next message.
+     *
+     * @return the digest.
+     */
+    @Override
+    protected byte[] engineDigest() {
+        byte[] out = sponge.digest(new byte[suffix / 8]);
+        sponge.init(suffix);
+        return out;
+    }
+    /**
+     * Start over with an empty message.
+     */
+    @Override
+    protected void engineReset() {
+        sponge.init(suffix);
+    }
+    /**
+     * The digest length.
+     *
+     * @return the digest length in bytes.
+     */
+    @Override
+    protected int engineGetDigestLength() {
+        return suffix / 8;
+    }
+}
@@ -1,3 +1,9 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Objects;
 /**
  * @author rick_adams.
@@ -10,7 +16,7 @@ public class SHA3SHAKE {
     /**
      * Used by Rho.
      */
-    private static final int[] KECCAKF_ROTC = {
+    static final int[] KECCAKF_ROTC = {
             0, 1, 62, 28, 27, 36, 44, 6, 55, 20,
             3, 10, 43, 25, 39, 41, 45, 15, 21, 8,
             18, 2, 61, 56, 14
@@ -19,7 +25,7 @@ public class SHA3SHAKE {
      * Used by the Iota.
      * Taken from mjosaarinen/tiny_sha3.
      */
-    private static final long[] KECCAKF_RNDC = {
+    static final long[] KECCAKF_RNDC = {
             0x0000000000000001L, 0x0000000000008082L, 0x800000000000808aL,
             0x8000000080008000L, 0x000000000000808bL, 0x0000000080000001L,
             0x8000000080008081L, 0x8000000000008009L, 0x000000000000008aL,
@@ -32,7 +38,7 @@ public class SHA3SHAKE {
     /**
      * Number of rounds to run Keccak-f for each permutation.
      */
-    private static final int KECCAKF_ROUNDS = 24;
+    static final int KECCAKF_ROUNDS = 24;
     /**
      * Total size, in bits, of the internal state used by Keccakf.
      */
@@ -41,6 +47,19 @@ public class SHA3SHAKE {
      * Used for byte conversion.
      */
     private static final int MASK = 0xFF;
+    /**
+     * SHA-3 domain separation bits followed by the first padding bit.
+     */
+    static final long SHA3_PAD = 0x06L;
+    /**
+     * SHAKE domain separation bits followed by the first padding bit.
+     */
+    static final long SHAKE_PAD = 0x1FL;
+    /**
+     * Little-endian view of a byte array as 64-bit lanes.
+     * Used to move whole lanes in and out of the state.
+     */
+    private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
     /**
      * The capacity(c) of the sponge.
      */
@@ -51,19 +70,46 @@ public class SHA3SHAKE {
      */
     private int byte_rate;
     /**
-     * Position of the sponge.
-     * In bits.
+     * Position of the sponge within the current rate block.
+     * In bytes.
      */
     private int pt;
+    /**
+     * True once the sponge has been padded and switched from absorbing to squeezing.
+     */
+    private boolean squeezing;
+    /**
+     * Number of Keccak-p rounds per permutation.
+     */
+    private int rounds;
+    /**
+     * Domain separation byte used when squeezing starts (SHAKE unless set otherwise).
+     */
+    private long xof_pad;
     /**
      * Internal state used by Keccakf.
-     * defined by the NIST specs.
+     * defined by the NIST specs, stored as 25 flat lanes with lane (x, y) at index x + 5 * y.
+     */
+    private long[] state;
+    /**
+     * The permutation engine used by this sponge.
      */
-    private long[][] state;
+    private final KeccakEngine engine;
     /**
      * Default constructor.
+     * Uses the unrolled permutation engine.
+     */
+    public SHA3SHAKE() {
+        this(new KeccakUnrolled());
+    }
+    /**
+     * Constructor with an explicit permutation engine.
+     *
+     * @param engine the Keccak-f[1600] engine to permute the state with.
      */
-    public SHA3SHAKE() {}
+    public SHA3SHAKE(KeccakEngine engine) {
+        this.engine = Objects.requireNonNull(engine);
+    }
     /**
      * Initialize the SHA-3/SHAKE sponge.
      * The suffix must be one of 224, 256, 384, or 512 for SHA-3, or one of 128 or 256 for SHAKE.
@@ -71,27 +117,108 @@ public class SHA3SHAKE {
      * @param suffix SHA-3/SHAKE suffix (SHA-3 digest bit length = suffix, SHAKE sec level = suffix)
      */
     public void init(int suffix) {
+        init(suffix, KECCAKF_ROUNDS, SHAKE_PAD);
+    }
+    /**
+     * Initialize the sponge as cSHAKE-<128,256> with a function-name and customization string.
+     * The prefix state comes from CSHAKE's cache, so repeated strings cost a state copy.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param N      function-name string
+     * @param S      customization string
+     */
+    public void init(int suffix, byte[] N, byte[] S) {
+        CSHAKE.init(this, suffix, N, S);
+    }
+    /**
+     * Initialize the sponge for a Keccak-based XOF other than plain SHAKE,
+     * such as cSHAKE (domain byte 0x04) or TurboSHAKE (12 rounds, caller-chosen domain byte).
+     *
+     * @param suffix security level (capacity = 2 * suffix bits)
+     * @param rounds number of Keccak-p rounds per permutation (24 for Keccak-f)
+     * @param domain domain separation byte absorbed by the first squeeze, padding bit included
+     */
+    void init(int suffix, int rounds, long domain) {
         cap = 2 * suffix;
         int rate_bits = SIZE_STATE - cap;
         byte_rate = rate_bits / 8;
-        state = new long[5][5];
+        if (state == null) {
+            state = new long[25];
+        } else {
+            Arrays.fill(state, 0L);
+        }
         pt = 0;
+        squeezing = false;
+        this.rounds = rounds;
+        this.xof_pad = domain;
+    }
+    /**
+     * Rate of the sponge.
+     *
+     * @return the rate in bytes.
+     */
+    public int rate() {
+        return byte_rate;
+    }
+    /**
+     * Fork a new sponge from this one: a copy of the 25 lanes, the rate, the offset and the
+     * phase, sharing this sponge's engine. Both sponges continue independently, so a prefix
+     * such as a key can be absorbed once and reused for many messages.
+     *
+     * @return the copy.
+     */
+    public SHA3SHAKE copy() {
+        SHA3SHAKE copy = new SHA3SHAKE(engine);
+        copy.copyFrom(this);
+        return copy;
+    }
+    /**
+     * Restore this sponge to a snapshot taken with copy(), or to the state of any other sponge.
+     * Reuses this sponge's state array, so restoring allocates nothing once initialized.
+     *
+     * @param src the sponge to copy from.
+     */
+    public void copyFrom(SHA3SHAKE src) {
+        if (src.state == null) {
+            throw new IllegalStateException("Sponge is not initialized.");
+        }
+        if (state == null) {
+            state = new long[25];
+        }
+        System.arraycopy(src.state, 0, state, 0, 25);
+        cap = src.cap;
+        byte_rate = src.byte_rate;
+        pt = src.pt;
+        squeezing = src.squeezing;
+        rounds = src.rounds;
+        xof_pad = src.xof_pad;
     }
     /**
      * Update the SHAKE sponge with a byte-oriented data chunk.
+     * May be called any number of times before the first squeeze or digest; the position
+     * within the current rate block carries over from one call to the next.
      *
      * @param data byte-oriented data buffer
      * @param pos  initial index to hash from
      * @param len  byte count on the buffer
+     * @throws IllegalStateException if the sponge is already squeezing.
      */
     public void absorb(byte[] data, int pos, int len) {
-        int j = 0;
-        for (int i = pos; i < len; i++) {
-            int a = (j / 8) % 5;
-            int b = (j / 8) / 5;
-            int c = (j % 8) * 8;
-            state[b][a] ^= (long) (data[i] & 0xFF) << c;
-            j++;
+        Objects.checkFromIndexSize(pos, len, data.length);
+        if (squeezing) {
+            throw new IllegalStateException("Cannot absorb after squeezing has started.");
+        }
+        if (Metrics.ENABLED) {
+            Metrics.absorbed(len);
+        }
+        int j = pt;
+        int i = pos;
+        int end = pos + len;
+        while (i < end) {
+            int n = Math.min(byte_rate - j, end - i);
+            xorIn(j, data, i, n);
+            i += n;
+            j += n;
 
             if (j == byte_rate) {
                 keccakF();
@@ -100,6 +227,39 @@ public class SHA3SHAKE {
         }
         this.pt = j;
     }
+    /**
+     * Update the SHAKE sponge with the remaining bytes of a buffer.
+     * Works directly on heap, direct and memory-mapped buffers without copying;
+     * the buffer's position is advanced to its limit.
+     *
+     * @param src byte-oriented data buffer
+     * @throws IllegalStateException if the sponge is already squeezing.
+     */
+    public void absorb(ByteBuffer src) {
+        if (squeezing) {
+            throw new IllegalStateException("Cannot absorb after squeezing has started.");
+        }
+        boolean little = src.order() == ByteOrder.LITTLE_ENDIAN;
+        int j = pt;
+        int i = src.position();
+        int end = src.limit();
+        if (Metrics.ENABLED) {
+            Metrics.absorbed(end - i);
+        }
+        while (i < end) {
+            int n = Math.min(byte_rate - j, end - i);
+            xorIn(j, src, i, n, little);
+            i += n;
+            j += n;
+
+            if (j == byte_rate) {
+                keccakF();
+                j = 0;
+            }
+        }
+        src.position(end);
+        this.pt = j;
+    }
     /**
      * Update the SHAKE sponge with a byte-oriented data chunk.
      *
@@ -119,38 +279,136 @@ public class SHA3SHAKE {
     }
     /**
      * Squeeze a chunk of hashed bytes from the sponge.
-     * Call this method as many times as needed to extract the total desired number of bytes.
+     * The first call pads the input with the SHAKE suffix and ends the absorbing phase.
+     * Call this method as many times as needed to extract the total desired number of bytes;
+     * consecutive calls continue the same output stream.
      *
      * @param   out hash value buffer.
+     * @param   off index of the first byte to write.
      * @param   len desired number of squeezed bytes.
-     * @return  the val buffer containing the desired hash value.
+     * @return  the out buffer containing the desired hash value.
      */
-    public byte[] squeeze(byte[] out, int len) {
-        pad(false);
-        keccakF();
-
-        for (int i = 0; i <= len / byte_rate; i++) {
-            int squeeze_bytes = 0;
-            for (long[] lane : state) {
-                for (long value : lane) {
-                    byte[] temp = longToBytes(value);
-                    for (int j = temp.length - 1; j >= 0; j--) {
-                        if (squeeze_bytes >= byte_rate) {
-                            break;
-                        }
-                        int index = squeeze_bytes + i * byte_rate;
-                        if (index >= out.length) {
-                            break;
-                        }
-                        out[index] = temp[j];
-                        squeeze_bytes++;
-                    }
-                }
+    public byte[] squeeze(byte[] out, int off, int len) {
+        Objects.checkFromIndexSize(off, len, out.length);
+        if (!squeezing) {
+            pad(xof_pad);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.squeezed(len);
+        }
+        int end = off + len;
+        while (off < end) {
+            if (pt == byte_rate) {
+                keccakF();
+                pt = 0;
             }
-            keccakF();
+            int n = Math.min(byte_rate - pt, end - off);
+            extract(pt, out, off, n);
+            off += n;
+            pt += n;
         }
         return out;
     }
+    /**
+     * Squeeze hashed bytes into the remaining space of a buffer.
+     * Lanes are written straight into heap, direct or memory-mapped buffers, with no
+     * intermediate array; the buffer's position is advanced to its limit. Off-heap memory
+     * segments can be passed through their asByteBuffer() view.
+     *
+     * @param dst the buffer to fill.
+     * @return    the dst buffer.
+     */
+    public ByteBuffer squeeze(ByteBuffer dst) {
+        if (!squeezing) {
+            pad(xof_pad);
+        }
+        boolean little = dst.order() == ByteOrder.LITTLE_ENDIAN;
+        int off = dst.position();
+        int end = dst.limit();
+        if (Metrics.ENABLED) {
+            Metrics.squeezed(end - off);
+        }
+        while (off < end) {
+            if (pt == byte_rate) {
+                keccakF();
+                pt = 0;
+            }
+            int n = Math.min(byte_rate - pt, end - off);
+            extract(pt, dst, off, n, little);
+            off += n;
+            pt += n;
+        }
+        dst.position(end);
+        return dst;
+    }
+    /**
+     * Squeeze bytes from the sponge and XOR them into a buffer in place,
+     * e.g. to apply a SHAKE keystream without materializing it.
+     * Continues the same output stream as squeeze.
+     *
+     * @param buf the buffer to XOR into.
+     * @param off index of the first byte.
+     * @param len number of bytes.
+     */
+    public void squeezeXor(byte[] buf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, buf.length);
+        if (!squeezing) {
+            pad(xof_pad);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.squeezed(len);
+        }
+        int end = off + len;
+        while (off < end) {
+            if (pt == byte_rate) {
+                keccakF();
+                pt = 0;
+            }
+            int n = Math.min(byte_rate - pt, end - off);
+            extractXor(pt, buf, off, n);
+            off += n;
+            pt += n;
+        }
+    }
+    /**
+     * Number of output bytes that can be squeezed before the next permutation: the rest of
+     * the current block, or a whole block if it is used up or squeezing has not started.
+     *
+     * @return the byte count, 1 to the rate.
+     */
+    int blockRemaining() {
+        return !squeezing || pt == byte_rate ? byte_rate : byte_rate - pt;
+    }
+    /**
+     * Discard squeezed bytes without copying them anywhere.
+     *
+     * @param len number of bytes to skip.
+     */
+    public void skip(long len) {
+        if (!squeezing) {
+            pad(xof_pad);
+        }
+        while (len > 0) {
+            if (pt == byte_rate) {
+                keccakF();
+                pt = 0;
+            }
+            int n = (int) Math.min(byte_rate - pt, len);
+            len -= n;
+            pt += n;
+        }
+    }
+    /**
+     * Squeeze a chunk of hashed bytes from the sponge.
+     * Call this method as many times as needed to extract the total desired number of bytes.
+     *
+     * @param   out hash value buffer.
+     * @param   len desired number of squeezed bytes.
+     * @return  the out buffer containing the desired hash value.
+     */
+    public byte[] squeeze(byte[] out, int len) {
+        return squeeze(out, 0, len);
+    }
     /**
      * Squeeze a chunk of hashed bytes from the sponge.
      * Call this method as many times as needed to extract the total desired number of bytes.
@@ -163,26 +421,54 @@ public class SHA3SHAKE {
     }
     /**
      * Squeeze a whole SHA-3 digest of hashed bytes from the sponge.
+     * Pads the input with the SHA-3 suffix and ends the absorbing phase.
+     * At most suffix / 8 bytes are written: the rest of the state is capacity and must never
+     * leave the sponge. A longer buffer keeps its trailing bytes; a shorter one receives a
+     * truncated digest.
      *
      * @param out   hash value buffer.
      * @return      the val buffer containing the desired hash value.
+     * @throws IllegalStateException if the sponge is already squeezing.
      */
     public byte[] digest(byte[] out) {
-        pad(true);
-        keccakF();
-
-        int index = 0;
-        for (long[] lane : state) {
-            for (long value : lane) {
-                byte[] temp = longToBytes(value);
-                for (int i = temp.length - 1; i >= 0 && index < out.length; i--) {
-                    out[index] = temp[i];
-                    index++;
-                }
-            }
+        int len = Math.min(out.length, cap / 16);
+        if (squeezing) {
+            throw new IllegalStateException("Digest already taken.");
+        }
+        pad(SHA3_PAD);
+        if (Metrics.ENABLED) {
+            Metrics.squeezed(len);
         }
+        extract(0, out, 0, len);
+        pt = len;
         return out;
     }
+    /**
+     * Write a whole SHA-3 digest (suffix / 8 bytes) at a buffer's position, advancing it.
+     *
+     * @param dst the buffer to write to.
+     * @return    the dst buffer.
+     * @throws IllegalStateException    if the sponge is already squeezing.
+     * @throws BufferOverflowException if the buffer has less room than the digest.
+     */
+    public ByteBuffer digest(ByteBuffer dst) {
+        int len = cap / 16;
+        if (squeezing) {
+            throw new IllegalStateException("Digest already taken.");
+        }
+        if (dst.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        pad(SHA3_PAD);
+        if (Metrics.ENABLED) {
+            Metrics.squeezed(len);
+        }
+        int off = dst.position();
+        extract(0, dst, off, len, dst.order() == ByteOrder.LITTLE_ENDIAN);
+        dst.position(off + len);
+        pt = len;
+        return dst;
+    }
     /**
      * Squeeze a whole SHA-3 digest of hashed bytes from the sponge.
      *
@@ -202,12 +488,20 @@ public class SHA3SHAKE {
     public static byte[] SHA3(int suffix, byte[] X, byte[] out) {
         byte[] output = out == null ? new byte[suffix / 8] : out;
         validSuffix(true, suffix, output.length);
-
-        SHA3SHAKE sponge = new SHA3SHAKE();
-        sponge.init(suffix);
-        sponge.absorb(X);
-        output = sponge.digest(output);
-        return output;
+        return ConcurrentSHA3.hash(suffix, X, output);
+    }
+    /**
+     * Compute the streamlined SHA-3-<224,256,384,512> of many independent inputs at once.
+     * The messages are hashed several at a time on an interleaved multi-buffer permutation,
+     * which suits large numbers of short messages.
+     *
+     * @param suffix desired output length in bits (one of 224, 256, 384, 512)
+     * @param inputs the messages to be hashed
+     * @param outs   one hash value buffer per message (null entries are allocated)
+     * @return       the outs array containing the hash values, in input order.
+     */
+    public static byte[][] hashBatch(int suffix, byte[][] inputs, byte[][] outs) {
+        return SHA3Batch.hashBatch(suffix, inputs, outs);
     }
     /**
      * Compute the streamlined SHAKE-<128,256> on input X with an output bit length L.
@@ -215,64 +509,164 @@ public class SHA3SHAKE {
      * @param suffix desired security level (either 128 or 256)
      * @param X      data to be hashed
      * @param L      desired output length in bits (must be a multiple of 8)
-     * @param out    hash value buffer (if null, this method allocates it with the required size)
+     * @param out    hash value buffer of at least L / 8 bytes, of which the first L / 8 are
+     *               filled (if null, this method allocates it with the required size)
      * @return       the out buffer containing the desired hash value.
      */
     public static byte[] SHAKE(int suffix, byte[] X, int L, byte[] out) {
-        byte[] output;
-        output = Objects.requireNonNullElseGet(out, () -> new byte[suffix / 8]);
-        SHA3SHAKE sponge = new SHA3SHAKE();
-        sponge.init(suffix);
-        sponge.absorb(X);
-        output = sponge.squeeze(L / 8);
-        return output;
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8");
+        }
+        byte[] output = out == null ? new byte[L / 8] : out;
+        if (output.length < L / 8) {
+            throw new IllegalArgumentException("Invalid buffer length.");
+        }
+        SHA3SHAKE sponge = ConcurrentSHA3.borrow(suffix);
+        try {
+            sponge.absorb(X);
+            return sponge.squeeze(output, 0, L / 8);
+        } finally {
+            ConcurrentSHA3.release(sponge);
+        }
     }
     //********************************* Helper Methods *********************************\\
     /**
-     * The Keccakf permutation.
+     * The Keccakf permutation, delegated to the sponge's engine.
      */
     private void keccakF() {
-        for (int r = 0; r < KECCAKF_ROUNDS; r++) {
-            // Theta.
-            long[] pillar = new long[5];
-            for (int i = 0; i < 5; i++) {
-                for (int j = 0; j < 5; j++) {
-                    pillar[i] ^= state[j][i];
-                }
-            }
-            for (int i = 0; i < 5; i++) {
-                long sheet = pillar[(i + 4) % 5] ^ ROTL64(pillar[(i + 1) % 5], 1);
-                for (int j = 0; j < 5; j++) {
-                    state[j][i] ^= sheet;
-                }
-            }
-            // Rho.
-            for (int i = 0; i < 5; i++) {
-                for (int j = 0; j < 5; j++) {
-                    state[i][j] = ROTL64(state[i][j], KECCAKF_ROTC[i * 5 + j]);
-                }
-            }
-            // Pi.
-            int x = 0, y = 1, prevX, prevY;
-            long temp = state[y][x];
-            for (int i = 0; i < 23; i++) {
-                prevX = x;
-                prevY = y;
-                y = x;
-                x = (x + 3 * prevY) % 5;
-                state[prevY][prevX] = state[y][x];
-            }
-            state[y][x] = temp;
-            // Chi.
-            long[] buffer = new long[5];
-            for (int i = 0; i < 5; i++) {
-                System.arraycopy(state[i], 0, buffer, 0, 5);
-                for (int j = 0; j < 5; j++) {
-                    state[i][j] ^= (~buffer[(j + 1) % 5]) & buffer[(j + 2) % 5];
-                }
-            }
-            // Iota.
-            state[0][0] ^= KECCAKF_RNDC[r];
+        if (Metrics.ENABLED) {
+            Metrics.permutation();
+        }
+        engine.permute(state, rounds);
+    }
+    /**
+     * XOR a run of bytes into the state, starting at byte offset j of the rate.
+     * Whole lanes are loaded 8 bytes at a time; only an unaligned head and tail
+     * fall back to single bytes. The run must not cross the end of the rate.
+     *
+     * @param j     byte offset into the state.
+     * @param data  the input buffer.
+     * @param off   the index of the first input byte.
+     * @param count the number of bytes to XOR in.
+     */
+    private void xorIn(int j, byte[] data, int off, int count) {
+        int end = off + count;
+        while (off < end && (j & 7) != 0) {
+            state[j >>> 3] ^= (long) (data[off++] & MASK) << ((j & 7) << 3);
+            j++;
+        }
+        while (end - off >= Long.BYTES) {
+            state[j >>> 3] ^= (long) LANE.get(data, off);
+            off += Long.BYTES;
+            j += Long.BYTES;
+        }
+        while (off < end) {
+            state[j >>> 3] ^= (long) (data[off++] & MASK) << ((j & 7) << 3);
+            j++;
+        }
+    }
+    /**
+     * XOR a run of bytes from a buffer into the state, starting at byte offset j of the rate.
+     * Uses absolute gets, so the buffer's position is left alone.
+     *
+     * @param j      byte offset into the state.
+     * @param src    the input buffer.
+     * @param off    the index of the first input byte.
+     * @param count  the number of bytes to XOR in.
+     * @param little true if the buffer's byte order is little-endian.
+     */
+    private void xorIn(int j, ByteBuffer src, int off, int count, boolean little) {
+        int end = off + count;
+        while (off < end && (j & 7) != 0) {
+            state[j >>> 3] ^= (long) (src.get(off++) & MASK) << ((j & 7) << 3);
+            j++;
+        }
+        while (end - off >= Long.BYTES) {
+            long lane = src.getLong(off);
+            state[j >>> 3] ^= little ? lane : Long.reverseBytes(lane);
+            off += Long.BYTES;
+            j += Long.BYTES;
+        }
+        while (off < end) {
+            state[j >>> 3] ^= (long) (src.get(off++) & MASK) << ((j & 7) << 3);
+            j++;
+        }
+    }
+    /**
+     * Copy a run of bytes out of the state, starting at byte offset j of the rate.
+     * Whole lanes are stored 8 bytes at a time; only an unaligned head and tail
+     * fall back to single bytes.
+     *
+     * @param j     byte offset into the state.
+     * @param out   the output buffer.
+     * @param off   the index of the first output byte.
+     * @param count the number of bytes to copy out.
+     */
+    private void extract(int j, byte[] out, int off, int count) {
+        int end = off + count;
+        while (off < end && (j & 7) != 0) {
+            out[off++] = (byte) (state[j >>> 3] >>> ((j & 7) << 3));
+            j++;
+        }
+        while (end - off >= Long.BYTES) {
+            LANE.set(out, off, state[j >>> 3]);
+            off += Long.BYTES;
+            j += Long.BYTES;
+        }
+        while (off < end) {
+            out[off++] = (byte) (state[j >>> 3] >>> ((j & 7) << 3));
+            j++;
+        }
+    }
+    /**
+     * Copy a run of bytes out of the state into a buffer, starting at byte offset j of the rate.
+     * Uses absolute puts, so the buffer's position is left alone.
+     *
+     * @param j      byte offset into the state.
+     * @param dst    the output buffer.
+     * @param off    the index of the first output byte.
+     * @param count  the number of bytes to copy out.
+     * @param little true if the buffer's byte order is little-endian.
+     */
+    private void extract(int j, ByteBuffer dst, int off, int count, boolean little) {
+        int end = off + count;
+        while (off < end && (j & 7) != 0) {
+            dst.put(off++, (byte) (state[j >>> 3] >>> ((j & 7) << 3)));
+            j++;
+        }
+        while (end - off >= Long.BYTES) {
+            long lane = state[j >>> 3];
+            dst.putLong(off, little ? lane : Long.reverseBytes(lane));
+            off += Long.BYTES;
+            j += Long.BYTES;
+        }
+        while (off < end) {
+            dst.put(off++, (byte) (state[j >>> 3] >>> ((j & 7) << 3)));
+            j++;
+        }
+    }
+    /**
+     * XOR a run of bytes of the state into a buffer, starting at byte offset j of the rate.
+     *
+     * @param j     byte offset into the state.
+     * @param buf   the buffer to XOR into.
+     * @param off   the index of the first buffer byte.
+     * @param count the number of bytes.
+     */
+    private void extractXor(int j, byte[] buf, int off, int count) {
+        int end = off + count;
+        while (off < end && (j & 7) != 0) {
+            buf[off++] ^= (byte) (state[j >>> 3] >>> ((j & 7) << 3));
+            j++;
+        }
+        while (end - off >= Long.BYTES) {
+            LANE.set(buf, off, (long) LANE.get(buf, off) ^ state[j >>> 3]);
+            off += Long.BYTES;
+            j += Long.BYTES;
+        }
+        while (off < end) {
+            buf[off++] ^= (byte) (state[j >>> 3] >>> ((j & 7) << 3));
+            j++;
         }
     }
     /**
@@ -298,14 +692,14 @@ public class SHA3SHAKE {
         }
     }
     /**
-     * Bit shifts tot he left.
+     * Bit shifts to the left.
      * Inspired by mjosaarinen/tiny_sha3.
      *
      * @param value the value to be rotated.
      * @param shift the number of bits to shift left.
      * @return      the value shifted left a number of bits.
      */
-    private static long ROTL64(long value, int shift) {
+    static long ROTL64(long value, int shift) {
         shift %= 64;
         return (value << shift) | (value >>> (64 - shift));
     }
@@ -324,30 +718,21 @@ public class SHA3SHAKE {
         return result;
     }
     /**
-     * Pad the sponge with the appropriate padding for SHA-3 and SHAKE.
-     * @param isSha3 true if padding for SHA-3, false if padding for SHAKE
+     * Pad the sponge with the appropriate padding for SHA-3 and SHAKE,
+     * permute, and switch to the squeezing phase.
+     * @param padInit domain separation bits and first padding bit (SHA3_PAD, SHAKE_PAD, ...)
      */
-    private void pad(boolean isSha3) {
-        long padInit;
-        if (isSha3) {
-            padInit = 0x06L;
-        } else {
-            padInit = 0x1FL;
-        }
-        int i = (pt / 8) % 5;
-        int j = (pt / 8) / 5;
+    private void pad(long padInit) {
+        int i = pt / 8;
         int k = (pt % 8) * 8;
+        state[i] ^= padInit << k;
 
-        if (state[j][i] == 0L && pt == 1) {
-            state[j][i] ^= padInit;
-        }
-        else {
-            state[j][i] ^= padInit << k;
-        }
-        int x = ((byte_rate - 1) / 8) % 5;
-        int y = ((byte_rate - 1) / 8) / 5;
+        int x = (byte_rate - 1) / 8;
         int z = ((byte_rate - 1) % 8) * 8;
-        state[y][x] ^= 0x80L << z;
+        state[x] ^= 0x80L << z;
+        keccakF();
+        pt = 0;
+        squeezing = true;
     }
     //********************************* End Program *********************************\\
 }
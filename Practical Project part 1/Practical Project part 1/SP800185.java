@@ -0,0 +1,91 @@
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Encoding helpers from NIST SP 800-185 (cSHAKE, KMAC, TupleHash, ParallelHash).
+ */
+public final class SP800185 {
+    /**
+     * Private constructor.
+     */
+    private SP800185() {}
+    /**
+     * left_encode(x): the byte count of x followed by x, big-endian, in as few bytes as possible.
+     *
+     * @param x a non-negative integer.
+     * @return  the encoding.
+     */
+    public static byte[] leftEncode(long x) {
+        byte[] bytes = bigEndian(x);
+        byte[] out = new byte[bytes.length + 1];
+        out[0] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, out, 1, bytes.length);
+        return out;
+    }
+    /**
+     * right_encode(x): x, big-endian, in as few bytes as possible, followed by its byte count.
+     *
+     * @param x a non-negative integer.
+     * @return  the encoding.
+     */
+    public static byte[] rightEncode(long x) {
+        byte[] bytes = bigEndian(x);
+        byte[] out = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, out, 0, bytes.length);
+        out[bytes.length] = (byte) bytes.length;
+        return out;
+    }
+    /**
+     * encode_string(S): left_encode of the bit length of S, followed by S.
+     *
+     * @param s the string, as bytes.
+     * @return  the encoding.
+     */
+    public static byte[] encodeString(byte[] s) {
+        byte[] len = leftEncode(8L * s.length);
+        byte[] out = new byte[len.length + s.length];
+        System.arraycopy(len, 0, out, 0, len.length);
+        System.arraycopy(s, 0, out, len.length, s.length);
+        return out;
+    }
+    /**
+     * Absorb bytepad(X, w) into a sponge, where X is the concatenation of the parts:
+     * left_encode(w), then X, then zero bytes up to a multiple of w.
+     *
+     * @param sponge the sponge to absorb into.
+     * @param w      the pad width in bytes (the sponge's rate).
+     * @param parts  the pieces of X.
+     */
+    public static void bytepad(SHA3SHAKE sponge, int w, byte[]... parts) {
+        byte[] prefix = leftEncode(w);
+        sponge.absorb(prefix);
+        long total = prefix.length;
+        for (byte[] part : parts) {
+            sponge.absorb(part);
+            total += part.length;
+        }
+        int zeros = (int) ((w - total % w) % w);
+        sponge.absorb(new byte[zeros]);
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Big-endian bytes of x without leading zeros (a single zero byte for 0).
+     *
+     * @param x a non-negative integer.
+     * @return  the bytes.
+     */
+    private static byte[] bigEndian(long x) {
+        if (x < 0) {
+            throw new IllegalArgumentException("Value must be non-negative.");
+        }
+        int n = 1;
+        while (n < Long.BYTES && (x >>> (8 * n)) != 0) {
+            n++;
+        }
+        byte[] out = new byte[n];
+        for (int i = n - 1; i >= 0; i--) {
+            out[i] = (byte) x;
+            x >>>= 8;
+        }
+        return out;
+    }
+}
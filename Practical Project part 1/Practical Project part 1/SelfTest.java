@@ -0,0 +1,819 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Correctness and performance gate for SHA3SHAKE, meant to be run before and after any change
+ * to the permutation, absorb or squeeze paths.
+ *   1. Known answers: built-in SHA-3/SHAKE vectors, the selfTest() of every SP 800-185 and
+ *      KangarooTwelve class, and, given a directory of NIST CAVP .rsp files, every byte-oriented
+ *      ShortMsg, LongMsg and VariableOut vector and the Monte Carlo tests.
+ *      Every multi-buffer engine is checked against KeccakReference and the single-message SHA3.
+ *      TagVerifier and KMAC.verify must accept good tags at any offset and reject flipped,
+ *      empty, truncated and too-short ones.
+ *   2. Differential fuzzing: random messages of random lengths, absorbed in random chunks
+ *      through every input API and engine, against the JDK's MessageDigest SHA3 (and, for
+ *      SHAKE, a one-shot reference sponge), squeezed in random chunks through every output API.
+ *   3. Throughput: MB/s of a few fixed workloads, compared with a baseline file; the run fails
+ *      if any of them is slower than the baseline by more than the threshold.
+ * The process exits with status 1 if anything fails.
+ *
+ * Usage: java SelfTest [-cavp dir] [-fuzz iterations] [-seed n]
+ *                      [-baseline file [-record] [-threshold percent]]
+ *   -cavp      directory with SHA3_*.rsp and SHAKE*.rsp files from the NIST CAVP
+ *   -fuzz      number of fuzzing rounds (default 1000)
+ *   -seed      random seed for fuzzing (default: random, printed for replay)
+ *   -baseline  throughput baseline; written if missing or with -record, else compared
+ *   -threshold allowed slowdown in percent (default 10)
+ */
+public final class SelfTest {
+//********************************* Constants *********************************\\
+    /**
+     * SHA-3 suffixes.
+     */
+    private static final int[] SHA3_SUFFIXES = {224, 256, 384, 512};
+    /**
+     * SHAKE suffixes.
+     */
+    private static final int[] SHAKE_SUFFIXES = {128, 256};
+    /**
+     * Built-in vectors: SHA-3 or SHAKE suffix, message (hex), expected output (hex).
+     * A suffix of 128 or 256 with a 32- or 64-byte output is SHAKE.
+     */
+    private static final String[][] VECTORS = {
+        {"224", "", "6b4e03423667dbb73b6e15454f0eb1abd4597f9a1b078e3f5b5a6bc7"},
+        {"256", "", "a7ffc6f8bf1ed76651c14756a061d662f580ff4de43b49fa82d80a4b80f8434a"},
+        {"384", "", "0c63a75b845e4f7d01107d852e4c2485c51a50aaaa94fc61995e71bbee983a2a"
+                + "c3713831264adb47fb6bd1e058d5f004"},
+        {"512", "", "a69f73cca23a9ac5c8b567dc185a756e97c982164fe25859e0d1dcc1475c80a6"
+                + "15b2123af1f5f94c11e3e9402c3ac558f500199d95b6d3e301758586281dcd26"},
+        {"224", "616263", "e642824c3f8cf24ad09234ee7d3c766fc9a3a5168d0c94ad73b46fdf"},
+        {"256", "616263", "3a985da74fe225b2045c172d6bd390bd855f086e3e9d525b46bfe24511431532"},
+        {"384", "616263", "ec01498288516fc926459f58e2c6ad8df9b473cb0fc08c2596da7cf0e49be4b2"
+                + "98d88cea927ac7f539f1edf228376d25"},
+        {"512", "616263", "b751850b1a57168a5693cd924b6b096e08f621827444f70d884f5d0240d2712e"
+                + "10e116e9192af3c91a7ec57647e3934057340b4cf408d5a56592f8274eec53f0"},
+        {"256", "a3".repeat(200), "79f38adec5c20307a98ef76e8324afbfd46cfd81b22e3973c65fa1bd9de31787"},
+    };
+    /**
+     * Built-in SHAKE vectors: suffix, message (hex), expected output (hex).
+     */
+    private static final String[][] SHAKE_VECTORS = {
+        {"128", "", "7f9c2ba4e88f827d616045507605853ed73b8093f6efbc88eb1a6eacfa66ef26"},
+        {"256", "", "46b9dd2b0ba88d13233b3feb743eeb243fcd52ea62b81b82b50c27646ed5762f"
+                + "d75dc4ddd8c0f200cb05019d67b592f6fc821c49479ab48640292eacb3b7c4be"},
+        {"128", "a3".repeat(200), "131ab8d2b594946b9c81333f9bb6e0ce75c3b93104fa3469d3917457385da037"},
+    };
+    /**
+     * Hex codec.
+     */
+    private static final HexFormat HEX = HexFormat.of();
+    /**
+     * Number of checks that passed.
+     */
+    private static int passed;
+    /**
+     * Number of checks that failed.
+     */
+    private static int failed;
+    /**
+     * Keeps throughput results alive so the JIT cannot drop the work.
+     */
+    private static volatile int sink;
+    /**
+     * Private constructor.
+     */
+    private SelfTest() {}
+    /**
+     * Main method
+     * @param args          the options (see the class comment).
+     * @throws IOException  if a CAVP or baseline file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path cavp = null;
+        Path baseline = null;
+        boolean record = false;
+        int rounds = 1000;
+        long seed = new Random().nextLong();
+        double threshold = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-cavp":
+                    cavp = Paths.get(args[++i]);
+                    break;
+                case "-fuzz":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "-record":
+                    record = true;
+                    break;
+                case "-threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.out.println("Error: Argument.");
+                    System.exit(2);
+            }
+        }
+        System.out.println("batch engine: " + KeccakEngines.describe());
+        knownAnswers();
+        engines(seed);
+        tags(seed);
+        if (cavp != null) {
+            cavpVectors(cavp);
+        }
+        fuzz(rounds, seed);
+        if (baseline != null) {
+            throughput(baseline, record, threshold);
+        }
+        System.out.printf("%d checks passed, %d failed%n", passed, failed);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Record the outcome of one check, printing it if it failed.
+     *
+     * @param name a description of the check.
+     * @param ok   true if it passed.
+     */
+    private static void check(String name, boolean ok) {
+        if (ok) {
+            passed++;
+        } else {
+            failed++;
+            System.out.println("FAIL " + name);
+        }
+    }
+    /**
+     * Run the built-in vectors and the selfTest() of the derived functions.
+     */
+    private static void knownAnswers() {
+        int before = failed;
+        for (String[] v : VECTORS) {
+            int suffix = Integer.parseInt(v[0]);
+            check("SHA3-" + suffix + "(" + abbreviate(v[1]) + ")",
+                  Arrays.equals(sha3(suffix, HEX.parseHex(v[1])), HEX.parseHex(v[2])));
+        }
+        for (String[] v : SHAKE_VECTORS) {
+            int suffix = Integer.parseInt(v[0]);
+            byte[] expected = HEX.parseHex(v[2]);
+            check("SHAKE" + suffix + "(" + abbreviate(v[1]) + ")",
+                  Arrays.equals(shake(suffix, HEX.parseHex(v[1]), expected.length), expected));
+        }
+        selfTest("CSHAKE", CSHAKE::selfTest);
+        selfTest("KMAC", KMAC::selfTest);
+        selfTest("TupleHash", TupleHash::selfTest);
+        selfTest("ParallelHash", ParallelHash::selfTest);
+        selfTest("KangarooTwelve", KangarooTwelve::selfTest);
+        selfTest("KeccakEngines", KeccakEngines::selfTest);
+        System.out.printf("known answers: %s%n", failed == before ? "ok" : (failed - before) + " failed");
+    }
+    /**
+     * Check every multi-buffer engine, not only the one KeccakEngines picked: each width of
+     * KeccakInterleaved (odd widths take the lone-state path) and KeccakVector if it loads,
+     * against KeccakReference and, through hashBatch, against the single-message SHA3.
+     *
+     * @param seed the random seed.
+     */
+    private static void engines(long seed) {
+        int before = failed;
+        List<KeccakMultiEngine> engines = new ArrayList<>();
+        for (int ways = 1; ways <= 5; ways++) {
+            engines.add(new KeccakInterleaved(ways));
+        }
+        KeccakMultiEngine vector = KeccakEngines.newVector();
+        if (vector != null) {
+            engines.add(vector);
+        }
+        for (KeccakMultiEngine engine : engines) {
+            String name = engine.getClass().getSimpleName() + "(" + engine.ways() + ")";
+            check(name + " permutation (seed " + seed + ")", engine.agrees(16, seed));
+            for (int suffix : SHA3_SUFFIXES) {
+                check(name + " hashBatch SHA3-" + suffix + " (seed " + seed + ")",
+                      SHA3Batch.agrees(engine, suffix, 3 * engine.ways() + 1, seed));
+            }
+        }
+        System.out.printf("engines: %d checked, %s%n", engines.size(),
+                          failed == before ? "ok" : (failed - before) + " failed");
+    }
+    /**
+     * Check tag verification: the keyed SHAKE MAC through TagVerifier and KMAC through
+     * KMAC.verify and TagVerifier.verifyAll, with message and tag at random offsets in one
+     * buffer. Good tags must pass; a flipped bit, the wrong key, an empty tag, a truncated
+     * prefix and an expected length below TagVerifier.MIN_TAG_LEN must not.
+     *
+     * @param seed the random seed.
+     */
+    private static void tags(long seed) {
+        int before = failed;
+        Random random = new Random(seed);
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        byte[] message = new byte[random.nextInt(300)];
+        random.nextBytes(message);
+        int macLen = 32;
+        int off = 1 + random.nextInt(16);
+        int tagOff = off + message.length + random.nextInt(16);
+        byte[] buf = new byte[tagOff + macLen + random.nextInt(16)];
+        System.arraycopy(message, 0, buf, off, message.length);
+        byte[] otherKey = key.clone();
+        otherKey[0] ^= 1;
+        for (int suffix : SHAKE_SUFFIXES) {
+            String name = "TagVerifier SHAKE" + suffix + " MAC";
+            byte[] mac = ConcurrentSHA3.mac(suffix, key, message, new byte[macLen]);
+            System.arraycopy(mac, 0, buf, tagOff, macLen);
+            check(name + " accepts at offsets",
+                  TagVerifier.verify(suffix, key, buf, off, message.length, buf, tagOff, macLen, macLen));
+            check(name + " rejects the wrong key",
+                  !TagVerifier.verify(suffix, otherKey, buf, off, message.length, buf, tagOff, macLen, macLen));
+            check(name + " rejects an empty tag",
+                  !TagVerifier.verify(suffix, key, buf, off, message.length, buf, tagOff, 0, macLen));
+            check(name + " rejects a truncated tag",
+                  !TagVerifier.verify(suffix, key, buf, off, message.length, buf, tagOff, 16, macLen));
+            int bit = random.nextInt(8 * macLen);
+            buf[tagOff + bit / 8] ^= (byte) (1 << (bit % 8));
+            check(name + " rejects a flipped bit",
+                  !TagVerifier.verify(suffix, key, buf, off, message.length, buf, tagOff, macLen, macLen));
+            check(name + " refuses an expected length below the minimum",
+                  throwsIllegalArgument(() -> TagVerifier.verify(suffix, key, buf, off, message.length,
+                                                                 buf, tagOff, 0, 0)));
+            byte[] flipped = mac.clone();
+            flipped[bit / 8] ^= (byte) (1 << (bit % 8));
+            byte[][] messages = {message, message, message, message};
+            byte[][] tags = {mac, flipped, new byte[0], Arrays.copyOf(mac, 16)};
+            check(name + " verifyAll flags flipped, empty and truncated tags",
+                  TagVerifier.verifyAll(suffix, key, messages, tags, macLen).equals(bitSet(1, 2, 3)));
+        }
+        for (int suffix : SHAKE_SUFFIXES) {
+            String name = "KMAC" + suffix + ".verify";
+            KMAC kmac = new KMAC(suffix, key, "SelfTest".getBytes(StandardCharsets.US_ASCII));
+            byte[] tag = kmac.mac(message, 8 * macLen);
+            System.arraycopy(tag, 0, buf, tagOff, macLen);
+            check(name + " accepts at offsets", kmac.verify(buf, off, message.length, buf, tagOff, macLen));
+            check(name + " rejects the wrong key",
+                  !new KMAC(suffix, otherKey, "SelfTest".getBytes(StandardCharsets.US_ASCII))
+                          .verify(buf, off, message.length, buf, tagOff, macLen));
+            check(name + " rejects an empty tag", !kmac.verify(buf, off, message.length, buf, tagOff, 0));
+            check(name + " rejects a truncated tag", !kmac.verify(buf, off, message.length, buf, tagOff, 16));
+            check(name + " rejects a tag below the minimum",
+                  !kmac.verify(buf, off, message.length, buf, tagOff, TagVerifier.MIN_TAG_LEN - 1));
+            int bit = random.nextInt(8 * macLen);
+            buf[tagOff + bit / 8] ^= (byte) (1 << (bit % 8));
+            check(name + " rejects a flipped bit", !kmac.verify(buf, off, message.length, buf, tagOff, macLen));
+            buf[tagOff + bit / 8] ^= (byte) (1 << (bit % 8));
+            check("TagVerifier KMAC" + suffix + " verifyAll in one buffer",
+                  TagVerifier.verifyAll(kmac, buf, new int[] {off, off}, new int[] {message.length, 0},
+                                        new int[] {tagOff, tagOff}, macLen).equals(bitSet(1)));
+            byte[][] messages = {message, message, message};
+            byte[][] tags = {tag, new byte[0], Arrays.copyOf(tag, 16)};
+            check("TagVerifier KMAC" + suffix + " verifyAll flags empty and truncated tags",
+                  TagVerifier.verifyAll(kmac, messages, tags).equals(bitSet(1, 2)));
+        }
+        System.out.printf("tags: %s%n", failed == before ? "ok" : (failed - before) + " failed");
+    }
+    /**
+     * Whether a call throws IllegalArgumentException.
+     *
+     * @param call the call.
+     * @return     true if it threw one.
+     */
+    private static boolean throwsIllegalArgument(BooleanSupplier call) {
+        try {
+            call.getAsBoolean();
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+    /**
+     * A BitSet with the given bits set.
+     *
+     * @param bits the indexes.
+     * @return     the set.
+     */
+    private static BitSet bitSet(int... bits) {
+        BitSet set = new BitSet();
+        for (int bit : bits) {
+            set.set(bit);
+        }
+        return set;
+    }
+    /**
+     * Run one class's selfTest, counting an exception as a failure.
+     *
+     * @param name the class name.
+     * @param test its selfTest.
+     */
+    private static void selfTest(String name, BooleanSupplier test) {
+        boolean ok;
+        try {
+            ok = test.getAsBoolean();
+        } catch (RuntimeException e) {
+            ok = false;
+        }
+        check(name + ".selfTest()", ok);
+    }
+    /**
+     * Run every .rsp file in a directory.
+     *
+     * @param dir the directory.
+     * @throws IOException if a file cannot be read.
+     */
+    private static void cavpVectors(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.rsp")) {
+            TreeMap<String, Path> sorted = new TreeMap<>();
+            files.forEach(f -> sorted.put(f.getFileName().toString(), f));
+            for (Path file : sorted.values()) {
+                int before = failed;
+                int checks = passed + failed;
+                cavpFile(file);
+                System.out.printf("%s: %d vectors, %s%n", file.getFileName(), passed + failed - checks,
+                                  failed == before ? "ok" : (failed - before) + " failed");
+            }
+        }
+    }
+    /**
+     * Run one CAVP response file. The algorithm comes from the file name (SHA3_224..., SHAKE128...),
+     * and Monte Carlo files are recognized by "Monte" in the name. Bit-oriented messages
+     * (lengths that are not a multiple of 8) are skipped.
+     *
+     * @param file the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static void cavpFile(Path file) throws IOException {
+        String name = file.getFileName().toString().toUpperCase(Locale.ROOT);
+        boolean isShake = name.startsWith("SHAKE");
+        int suffix = Integer.parseInt(name.replaceAll("^SHA(KE|3_)(\\d+).*$", "$2"));
+        boolean monte = name.contains("MONTE");
+        long len = -1;
+        byte[] msg = null;
+        int outBits = -1;
+        int minBytes = -1;
+        int maxBytes = -1;
+        int[] nextLen = {-1};
+        byte[] md = null;
+        int count = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("[")) {
+                    String[] kv = line.substring(1, line.length() - 1).split("=");
+                    if (kv.length == 2 && kv[0].trim().startsWith("Minimum Output Length")) {
+                        minBytes = Integer.parseInt(kv[1].trim()) / 8;
+                    } else if (kv.length == 2 && kv[0].trim().startsWith("Maximum Output Length")) {
+                        maxBytes = Integer.parseInt(kv[1].trim()) / 8;
+                        nextLen[0] = maxBytes;
+                    } else if (kv.length == 2 && kv[0].trim().equals("Outputlen")) {
+                        outBits = Integer.parseInt(kv[1].trim());
+                    }
+                    continue;
+                }
+                int eq = line.indexOf('=');
+                if (line.startsWith("#") || eq < 0) {
+                    continue;
+                }
+                String key = line.substring(0, eq).trim();
+                String value = line.substring(eq + 1).trim();
+                switch (key) {
+                    case "COUNT":
+                        count = Integer.parseInt(value);
+                        break;
+                    case "Len":
+                        len = Long.parseLong(value);
+                        break;
+                    case "Outputlen":
+                        outBits = Integer.parseInt(value);
+                        break;
+                    case "Seed":
+                    case "Msg":
+                        msg = HEX.parseHex(value);
+                        md = msg;
+                        break;
+                    case "MD":
+                    case "Output":
+                        byte[] expected = HEX.parseHex(value);
+                        if (monte) {
+                            md = isShake ? shakeMonteCarlo(suffix, md, minBytes, maxBytes, nextLen)
+                                         : sha3MonteCarlo(suffix, md);
+                            check(file.getFileName() + " COUNT " + count, Arrays.equals(md, expected)
+                                  && (!isShake || outBits == 8 * md.length));
+                        } else if (len < 0 || len % 8 == 0) {
+                            // VariableOut files give no Len; their messages are whole bytes.
+                            byte[] m = len < 0 ? msg : Arrays.copyOf(msg, (int) (len / 8));
+                            byte[] out = isShake ? shake(suffix, m, outBits / 8) : sha3(suffix, m);
+                            check(file.getFileName() + " Len " + 8L * m.length + (isShake ? " Outputlen " + outBits : ""),
+                                  Arrays.equals(out, expected));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+    /**
+     * One outer round of the SHA-3 Monte Carlo test: MD = SHA3(MD), 1000 times.
+     *
+     * @param suffix the SHA-3 suffix.
+     * @param md     the previous checkpoint (the seed at first).
+     * @return       the next checkpoint.
+     */
+    private static byte[] sha3MonteCarlo(int suffix, byte[] md) {
+        for (int i = 0; i < 1000; i++) {
+            md = sha3(suffix, md);
+        }
+        return md;
+    }
+    /**
+     * One outer round of the SHAKE Monte Carlo test: 1000 times, hash the leftmost 128 bits of
+     * the last output to an output whose length follows from the rightmost 16 bits of the
+     * output before it. The length carries over from round to round and starts at the maximum.
+     *
+     * @param suffix   the SHAKE suffix.
+     * @param out      the previous checkpoint (the initial message at first).
+     * @param minBytes the minimum output length in bytes.
+     * @param maxBytes the maximum output length in bytes.
+     * @param nextLen  holds the length of the next output; updated.
+     * @return         the next checkpoint.
+     */
+    private static byte[] shakeMonteCarlo(int suffix, byte[] out, int minBytes, int maxBytes, int[] nextLen) {
+        int range = maxBytes - minBytes + 1;
+        for (int i = 0; i < 1000; i++) {
+            out = shake(suffix, Arrays.copyOf(out, 16), nextLen[0]);
+            nextLen[0] = nextLength(out, minBytes, range);
+        }
+        return out;
+    }
+    /**
+     * Output length that follows an output in the SHAKE Monte Carlo test.
+     *
+     * @param out      the output.
+     * @param minBytes the minimum output length in bytes.
+     * @param range    the number of possible lengths.
+     * @return         the next output length in bytes.
+     */
+    private static int nextLength(byte[] out, int minBytes, int range) {
+        int right = (out[out.length - 2] & 0xFF) << 8 | (out[out.length - 1] & 0xFF);
+        return minBytes + right % range;
+    }
+    /**
+     * Compare random messages, absorbed and squeezed through random APIs in random chunks,
+     * with the JDK's SHA3 and with a one-shot reference SHAKE.
+     *
+     * @param rounds the number of messages.
+     * @param seed   the random seed.
+     */
+    private static void fuzz(int rounds, long seed) {
+        Random random = new Random(seed);
+        int before = failed;
+        SHA3SHAKE[] sponges = {new SHA3SHAKE(), new SHA3SHAKE(new KeccakReference())};
+        for (int r = 0; r < rounds; r++) {
+            byte[] data = new byte[randomLength(random)];
+            random.nextBytes(data);
+            SHA3SHAKE sponge = sponges[random.nextInt(sponges.length)];
+            String where = " (seed " + seed + ", round " + r + ", " + data.length + " bytes)";
+
+            int suffix = SHA3_SUFFIXES[random.nextInt(SHA3_SUFFIXES.length)];
+            byte[] expected = jdk(suffix, data);
+            sponge.init(suffix);
+            absorbChunked(sponge, data, random);
+            byte[] out = digest(sponge, suffix / 8, random);
+            check("SHA3-" + suffix + " chunked" + where, Arrays.equals(out, expected));
+            check("SHA3-" + suffix + " ConcurrentSHA3" + where,
+                  Arrays.equals(ConcurrentSHA3.hash(suffix, data, null), expected));
+            SHA3SHAKE held = ConcurrentSHA3.borrow(128);
+            try {
+                held.absorb(data);
+                SHA3SHAKE.SHAKE(256, data, 256, null);
+                check("SHAKE128 borrowed sponge across a nested call" + where,
+                      Arrays.equals(held.squeeze(32), ConcurrentSHA3.shake(128, data, new byte[32])));
+            } finally {
+                ConcurrentSHA3.release(held);
+            }
+            check("SHA3-" + suffix + " MessageDigest" + where, Arrays.equals(messageDigest(suffix, data, random), expected));
+            if (r % 64 == 0) {
+                byte[][] batch = new byte[1 + random.nextInt(9)][];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = Arrays.copyOf(data, random.nextInt(data.length + 1));
+                }
+                byte[][] outs = SHA3SHAKE.hashBatch(suffix, batch, new byte[batch.length][]);
+                for (int i = 0; i < batch.length; i++) {
+                    check("SHA3-" + suffix + " hashBatch[" + i + "]" + where, Arrays.equals(outs[i], jdk(suffix, batch[i])));
+                }
+            }
+
+            int shakeSuffix = SHAKE_SUFFIXES[random.nextInt(SHAKE_SUFFIXES.length)];
+            int outLen = randomLength(random);
+            byte[] reference = shake(shakeSuffix, data, outLen);
+            sponge.init(shakeSuffix);
+            absorbChunked(sponge, data, random);
+            check("SHAKE" + shakeSuffix + " chunked" + where + " -> " + outLen,
+                  Arrays.equals(squeezeChunked(sponge, outLen, random), reference));
+        }
+        System.out.printf("fuzzing: %d rounds, %s (seed %d)%n", rounds,
+                          failed == before ? "ok" : (failed - before) + " failed", seed);
+    }
+    /**
+     * A random length, mostly within a few rate blocks, sometimes up to 1 MB.
+     *
+     * @param random the source of randomness.
+     * @return       the length.
+     */
+    private static int randomLength(Random random) {
+        switch (random.nextInt(8)) {
+            case 0:
+                return random.nextInt(1 << 20);
+            case 1:
+                // Around a SHAKE128 block boundary.
+                return Math.max(0, 168 * random.nextInt(4) + random.nextInt(3) - 1);
+            default:
+                return random.nextInt(600);
+        }
+    }
+    /**
+     * Absorb data in random chunks, each through a random input API.
+     *
+     * @param sponge the sponge.
+     * @param data   the data.
+     * @param random the source of randomness.
+     */
+    private static void absorbChunked(SHA3SHAKE sponge, byte[] data, Random random) {
+        int pos = 0;
+        while (pos < data.length) {
+            int n = Math.min(data.length - pos, random.nextInt(4) == 0 ? random.nextInt(4096) : random.nextInt(300));
+            switch (random.nextInt(3)) {
+                case 0:
+                    sponge.absorb(data, pos, n);
+                    break;
+                case 1:
+                    sponge.absorb(ByteBuffer.wrap(data, pos, n));
+                    break;
+                default:
+                    ByteBuffer direct = ByteBuffer.allocateDirect(n + 7);
+                    direct.position(random.nextInt(8));
+                    direct.put(data, pos, n).flip().position(direct.limit() - n);
+                    sponge.absorb(direct);
+                    break;
+            }
+            pos += n;
+        }
+    }
+    /**
+     * Squeeze output in random chunks, each through a random output API.
+     *
+     * @param sponge the sponge.
+     * @param len    the output length.
+     * @param random the source of randomness.
+     * @return       the output.
+     */
+    private static byte[] squeezeChunked(SHA3SHAKE sponge, int len, Random random) {
+        byte[] out = new byte[len];
+        int pos = 0;
+        while (pos < len) {
+            int n = Math.min(len - pos, random.nextInt(4) == 0 ? random.nextInt(4096) : random.nextInt(300));
+            switch (random.nextInt(5)) {
+                case 0:
+                    sponge.squeeze(out, pos, n);
+                    break;
+                case 4:
+                    new XofReader(sponge).read(out, pos, n);
+                    break;
+                case 1:
+                    sponge.squeezeXor(out, pos, n);
+                    break;
+                case 2:
+                    ByteBuffer direct = ByteBuffer.allocateDirect(n);
+                    sponge.squeeze(direct).flip();
+                    direct.get(out, pos, n);
+                    break;
+                default:
+                    sponge.squeeze(ByteBuffer.wrap(out, pos, n));
+                    break;
+            }
+            pos += n;
+        }
+        return out;
+    }
+    /**
+     * Take a SHA-3 digest through a random output API.
+     *
+     * @param sponge the sponge, still absorbing.
+     * @param len    the digest length in bytes.
+     * @param random the source of randomness.
+     * @return       the digest.
+     */
+    private static byte[] digest(SHA3SHAKE sponge, int len, Random random) {
+        byte[] out = new byte[len];
+        switch (random.nextInt(3)) {
+            case 0:
+                return sponge.digest(out);
+            case 1:
+                sponge.digest(ByteBuffer.wrap(out));
+                return out;
+            default:
+                ByteBuffer direct = ByteBuffer.allocateDirect(len);
+                sponge.digest(direct).flip();
+                direct.get(out);
+                return out;
+        }
+    }
+    /**
+     * Hash through SHA3MessageDigest, updating in random chunks.
+     *
+     * @param suffix the SHA-3 suffix.
+     * @param data   the data.
+     * @param random the source of randomness.
+     * @return       the digest.
+     */
+    private static byte[] messageDigest(int suffix, byte[] data, Random random) {
+        SHA3MessageDigest md = new SHA3MessageDigest(suffix);
+        int pos = 0;
+        while (pos < data.length) {
+            int n = Math.min(data.length - pos, random.nextInt(500));
+            if (n == 1) {
+                md.update(data[pos]);
+            } else {
+                md.update(data, pos, n);
+            }
+            pos += n;
+        }
+        return md.digest();
+    }
+    /**
+     * Measure the workloads, then record them as the baseline or compare them with it.
+     *
+     * @param file      the baseline file.
+     * @param record    true to overwrite the baseline.
+     * @param threshold allowed slowdown in percent.
+     * @throws IOException if the baseline cannot be read or written.
+     */
+    private static void throughput(Path file, boolean record, double threshold) throws IOException {
+        TreeMap<String, Double> current = new TreeMap<>();
+        byte[] mib = new byte[1 << 20];
+        new Random(1).nextBytes(mib);
+        byte[] small = Arrays.copyOf(mib, 64);
+        byte[] out = new byte[64];
+        long[] state = new long[25];
+        KeccakEngine engine = new KeccakUnrolled();
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        current.put("keccakF", measure(200, () -> {
+            engine.permute(state);
+            return (int) state[0];
+        }));
+        for (int suffix : new int[] {256, 512}) {
+            current.put("sha3-" + suffix + ".1MiB", measure(mib.length, () -> {
+                sponge.init(suffix);
+                sponge.absorb(mib);
+                return sponge.digest(out)[0];
+            }));
+        }
+        current.put("sha3-256.64B", measure(small.length, () -> {
+            sponge.init(256);
+            sponge.absorb(small);
+            return sponge.digest(out)[0];
+        }));
+        current.put("shake128.squeeze.1MiB", measure(mib.length, () -> {
+            sponge.init(128);
+            sponge.absorb(small);
+            return sponge.squeeze(mib, 0, mib.length)[0];
+        }));
+
+        Properties base = new Properties();
+        if (!record && Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                base.load(in);
+            }
+        }
+        System.out.printf("%-24s %12s %12s %9s%n", "throughput (MB/s)", "baseline", "current", "change");
+        Properties updated = new Properties();
+        updated.putAll(base);
+        boolean missing = false;
+        for (String name : current.keySet()) {
+            double now = current.get(name);
+            String stored = base.getProperty(name);
+            if (stored == null) {
+                missing = true;
+                updated.setProperty(name, String.format(Locale.ROOT, "%.1f", now));
+                System.out.printf(Locale.ROOT, "%-24s %12s %12.1f %9s%n", name, "-", now, "new");
+                continue;
+            }
+            double then = Double.parseDouble(stored);
+            double change = 100 * (now - then) / then;
+            System.out.printf(Locale.ROOT, "%-24s %12.1f %12.1f %+8.1f%%%n", name, then, now, change);
+            check("throughput " + name + " within " + threshold + "% of baseline", change >= -threshold);
+        }
+        if (missing) {
+            try (OutputStream o = Files.newOutputStream(file)) {
+                updated.store(o, "SelfTest throughput baseline, MB/s");
+            }
+            System.out.println("baseline written to " + file);
+        }
+    }
+    /**
+     * Best throughput of five 200 ms runs after a warm-up, in MB/s. Taking the best run
+     * filters out pauses from GC and other processes.
+     *
+     * @param bytesPerOp the bytes processed per operation.
+     * @param op         the operation; returns a value derived from its result.
+     * @return           the throughput.
+     */
+    private static double measure(long bytesPerOp, IntSupplier op) {
+        int acc = 0;
+        long end = System.nanoTime() + 500_000_000L;
+        while (System.nanoTime() < end) {
+            acc += op.getAsInt();
+        }
+        double best = 0;
+        for (int run = 0; run < 5; run++) {
+            long ops = 0;
+            long start = System.nanoTime();
+            long now;
+            do {
+                acc += op.getAsInt();
+                ops++;
+                now = System.nanoTime();
+            } while (now - start < 200_000_000L);
+            best = Math.max(best, ops * bytesPerOp / ((now - start) / 1e3));
+        }
+        sink = acc;
+        return best;
+    }
+    /**
+     * SHA-3 of a message on a fresh sponge.
+     *
+     * @param suffix the SHA-3 suffix.
+     * @param data   the message.
+     * @return       the digest.
+     */
+    private static byte[] sha3(int suffix, byte[] data) {
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        sponge.init(suffix);
+        sponge.absorb(data);
+        return sponge.digest();
+    }
+    /**
+     * SHAKE of a message in one call on the reference engine.
+     *
+     * @param suffix the SHAKE suffix.
+     * @param data   the message.
+     * @param len    the output length in bytes.
+     * @return       the output.
+     */
+    private static byte[] shake(int suffix, byte[] data, int len) {
+        SHA3SHAKE sponge = new SHA3SHAKE(new KeccakReference());
+        sponge.init(suffix);
+        sponge.absorb(data);
+        return sponge.squeeze(len);
+    }
+    /**
+     * SHA-3 of a message with the JDK's MessageDigest.
+     *
+     * @param suffix the SHA-3 suffix.
+     * @param data   the message.
+     * @return       the digest.
+     */
+    private static byte[] jdk(int suffix, byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA3-" + suffix).digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Shorten a hex message for a check name.
+     *
+     * @param hex the message in hex.
+     * @return    the message, or its length if it is long.
+     */
+    private static String abbreviate(String hex) {
+        return hex.length() <= 16 ? '"' + hex + '"' : hex.length() / 2 + " bytes";
+    }
+}
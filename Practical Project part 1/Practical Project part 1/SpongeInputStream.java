@@ -0,0 +1,49 @@
+import java.io.InputStream;
+import java.util.Objects;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * InputStream view of the squeezing phase of a SHA3SHAKE sponge.
+ * The stream never ends; every read continues the SHAKE output where the last one stopped.
+ */
+public class SpongeInputStream extends InputStream {
+    /**
+     * The sponge being squeezed.
+     */
+    private final SHA3SHAKE sponge;
+    /**
+     * Scratch buffer for single-byte reads.
+     */
+    private final byte[] one = new byte[1];
+    /**
+     * Constructor.
+     *
+     * @param sponge an initialized sponge, either still absorbing or already squeezing.
+     */
+    public SpongeInputStream(SHA3SHAKE sponge) {
+        this.sponge = Objects.requireNonNull(sponge);
+    }
+    /**
+     * Squeeze a single byte.
+     *
+     * @return the next output byte, 0 to 255.
+     */
+    @Override
+    public int read() {
+        sponge.squeeze(one, 0, 1);
+        return one[0] & 0xFF;
+    }
+    /**
+     * Squeeze a run of bytes.
+     *
+     * @param b   the output buffer.
+     * @param off the index of the first byte to fill.
+     * @param len the number of bytes to fill.
+     * @return    len, as the output never runs out.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) {
+        sponge.squeeze(b, off, len);
+        return len;
+    }
+}
@@ -0,0 +1,151 @@
+import java.nio.ByteBuffer;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Memory-hard password-to-key derivation on the sponge, following Balloon hashing
+ * (Boneh, Corrigan-Gibbs and Schechter) with SHA3-256 as the compression function.
+ * A buffer of 32-byte blocks is filled from the password and salt, then mixed for a number
+ * of rounds in which every block is hashed with its predecessor and with three other blocks
+ * picked pseudo-randomly from the salt. The last block is stretched with SHAKE256.
+ * Each block costs about seven permutations per round and the whole buffer must be held
+ * at once, so guessing is slow and memory-bound.
+ */
+public final class SpongeKDF {
+//********************************* Constants *********************************\\
+    /**
+     * Block length in bytes (one SHA3-256 digest).
+     */
+    private static final int BLOCK = 32;
+    /**
+     * Number of pseudo-random blocks mixed into each block per round.
+     */
+    private static final int DELTA = 3;
+    /**
+     * Default log2 of the memory cost in KiB (1 MiB).
+     */
+    static final int DEFAULT_MEMORY_SHIFT = 10;
+    /**
+     * Default number of mixing rounds.
+     */
+    static final int DEFAULT_ITERATIONS = 3;
+    /**
+     * Largest accepted log2 of the memory cost in KiB (1 GiB).
+     */
+    static final int MAX_MEMORY_SHIFT = 20;
+    /**
+     * Largest accepted number of rounds (stored in one byte).
+     */
+    static final int MAX_ITERATIONS = 255;
+    /**
+     * Salt length in bytes.
+     */
+    static final int SALT_LEN = 16;
+    /**
+     * Private constructor.
+     */
+    private SpongeKDF() {}
+    /**
+     * Derive key material from a password.
+     *
+     * @param password    the passphrase.
+     * @param salt        the salt.
+     * @param memoryShift log2 of the memory cost in KiB, 0 to 20.
+     * @param iterations  the number of mixing rounds, 1 to 255.
+     * @param len         the output length in bytes.
+     * @return            the key material.
+     */
+    public static byte[] derive(byte[] password, byte[] salt, int memoryShift, int iterations, int len) {
+        validParameters(memoryShift, iterations);
+        int n = (1024 / BLOCK) << memoryShift;
+        byte[] buf = new byte[n * BLOCK];
+        ByteBuffer view = ByteBuffer.wrap(buf);
+        byte[] scratch = new byte[BLOCK];
+        byte[] counter = new byte[Long.BYTES];
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        long cnt = 0;
+
+        // Expand: block 0 from the password and salt, every later block from its predecessor.
+        sponge.init(256);
+        sponge.absorb(littleEndian(cnt++, counter));
+        sponge.absorb(password);
+        sponge.absorb(salt);
+        sponge.digest(view.position(0));
+        for (int m = 1; m < n; m++) {
+            sponge.init(256);
+            sponge.absorb(littleEndian(cnt++, counter));
+            sponge.absorb(buf, (m - 1) * BLOCK, BLOCK);
+            sponge.digest(view.position(m * BLOCK));
+        }
+        // Mix.
+        for (int t = 0; t < iterations; t++) {
+            for (int m = 0; m < n; m++) {
+                int prev = (m == 0 ? n - 1 : m - 1) * BLOCK;
+                sponge.init(256);
+                sponge.absorb(littleEndian(cnt++, counter));
+                sponge.absorb(buf, prev, BLOCK);
+                sponge.absorb(buf, m * BLOCK, BLOCK);
+                sponge.digest(view.position(m * BLOCK));
+                for (int i = 0; i < DELTA; i++) {
+                    sponge.init(256);
+                    sponge.absorb(littleEndian(cnt++, counter));
+                    sponge.absorb(salt);
+                    sponge.absorb(littleEndian(t, counter));
+                    sponge.absorb(littleEndian(m, counter));
+                    sponge.absorb(littleEndian(i, counter));
+                    sponge.digest(scratch);
+                    int other = (int) (littleEndian(scratch) & (n - 1));
+                    sponge.init(256);
+                    sponge.absorb(littleEndian(cnt++, counter));
+                    sponge.absorb(buf, m * BLOCK, BLOCK);
+                    sponge.absorb(buf, other * BLOCK, BLOCK);
+                    sponge.digest(view.position(m * BLOCK));
+                }
+            }
+        }
+        sponge.init(256);
+        sponge.absorb(buf, (n - 1) * BLOCK, BLOCK);
+        return sponge.squeeze(len);
+    }
+    /**
+     * Check the cost parameters.
+     *
+     * @param memoryShift log2 of the memory cost in KiB.
+     * @param iterations  the number of mixing rounds.
+     */
+    static void validParameters(int memoryShift, int iterations) {
+        if (memoryShift < 0 || memoryShift > MAX_MEMORY_SHIFT) {
+            throw new IllegalArgumentException("Invalid memory cost.");
+        }
+        if (iterations < 1 || iterations > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("Invalid iteration count.");
+        }
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Write a value as 8 little-endian bytes.
+     *
+     * @param value the value.
+     * @param out   the 8-byte buffer.
+     * @return      the buffer.
+     */
+    private static byte[] littleEndian(long value, byte[] out) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            out[i] = (byte) value;
+            value >>>= 8;
+        }
+        return out;
+    }
+    /**
+     * Read the first 8 bytes of a buffer as a little-endian value.
+     *
+     * @param in the buffer.
+     * @return   the value.
+     */
+    private static long littleEndian(byte[] in) {
+        long value = 0;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            value = value << 8 | (in[i] & 0xFF);
+        }
+        return value;
+    }
+}
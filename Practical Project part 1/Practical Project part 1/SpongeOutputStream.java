@@ -0,0 +1,56 @@
+import java.io.OutputStream;
+import java.util.Objects;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * OutputStream view of the absorbing phase of a SHA3SHAKE sponge.
+ * Everything written to the stream is absorbed, so data of any size can be hashed
+ * with InputStream.transferTo() in fixed memory.
+ */
+public class SpongeOutputStream extends OutputStream {
+    /**
+     * The sponge being fed.
+     */
+    private final SHA3SHAKE sponge;
+    /**
+     * Scratch buffer for single-byte writes.
+     */
+    private final byte[] one = new byte[1];
+    /**
+     * Constructor.
+     *
+     * @param sponge an initialized sponge that has not started squeezing.
+     */
+    public SpongeOutputStream(SHA3SHAKE sponge) {
+        this.sponge = Objects.requireNonNull(sponge);
+    }
+    /**
+     * Absorb a single byte.
+     *
+     * @param b the byte (low 8 bits).
+     */
+    @Override
+    public void write(int b) {
+        one[0] = (byte) b;
+        sponge.absorb(one, 0, 1);
+    }
+    /**
+     * Absorb a run of bytes.
+     *
+     * @param b   the data.
+     * @param off the index of the first byte.
+     * @param len the byte count.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) {
+        sponge.absorb(b, off, len);
+    }
+    /**
+     * The sponge behind this stream.
+     *
+     * @return the sponge.
+     */
+    public SHA3SHAKE sponge() {
+        return sponge;
+    }
+}
@@ -0,0 +1,225 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Constant-time tag verification that works on offsets into the caller's buffers.
+ * The comparison always looks at every byte, so its timing does not reveal where a forged tag
+ * first differs; the expected tag is computed into a per-thread scratch buffer, so verifying
+ * a record allocates nothing once a thread is warmed up. The batch forms check many
+ * (message, tag) pairs on the fork-join pool and return the indexes of the failures.
+ * The keyed SHAKE MAC of Main's mac command, SHAKE-<128,256>(key || message), is verified
+ * here; KMAC tags are verified in place with KMAC.verify and in bulk here.
+ * Tags shorter than MIN_TAG_LEN never verify. A shorter SHAKE MAC is a prefix of a longer
+ * one, so its verifiers also take the MAC length the protocol expects and reject a tag of
+ * any other length; a KMAC tag binds its own length, so a truncated one fails anyway.
+ */
+public final class TagVerifier {
+//********************************* Constants *********************************\\
+    /**
+     * Little-endian long view of a byte array.
+     */
+    private static final VarHandle LANE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+     * Expected-tag scratch buffer, one per thread.
+     */
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[64]);
+    /**
+     * Shortest tag that can verify, in bytes.
+     */
+    static final int MIN_TAG_LEN = 16;
+    /**
+     * Private constructor.
+     */
+    private TagVerifier() {}
+    /**
+     * Compare two byte ranges in constant time (for a given length).
+     *
+     * @param a    the first buffer.
+     * @param aOff the index of the first byte in a.
+     * @param b    the second buffer.
+     * @param bOff the index of the first byte in b.
+     * @param len  the number of bytes.
+     * @return     true if the ranges are equal.
+     */
+    public static boolean isEqual(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        Objects.checkFromIndexSize(aOff, len, a.length);
+        Objects.checkFromIndexSize(bOff, len, b.length);
+        long diff = 0;
+        int i = 0;
+        for (; i + Long.BYTES <= len; i += Long.BYTES) {
+            diff |= (long) LANE.get(a, aOff + i) ^ (long) LANE.get(b, bOff + i);
+        }
+        for (; i < len; i++) {
+            diff |= a[aOff + i] ^ b[bOff + i];
+        }
+        return diff == 0;
+    }
+    /**
+     * Verify a keyed SHAKE MAC, SHAKE-<128,256>(key || message), in place.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param key    the key.
+     * @param data   the buffer holding the message.
+     * @param off    the index of the first message byte.
+     * @param len    the message length.
+     * @param tag    the buffer holding the tag.
+     * @param tagOff the index of the first tag byte.
+     * @param tagLen the length of the tag received.
+     * @param macLen the MAC length the protocol expects, at least MIN_TAG_LEN.
+     * @return       true if the tag is valid and exactly macLen bytes long.
+     * @throws IllegalArgumentException if macLen is below MIN_TAG_LEN.
+     */
+    public static boolean verify(int suffix, byte[] key, byte[] data, int off, int len,
+                                 byte[] tag, int tagOff, int tagLen, int macLen) {
+        checkMacLength(macLen);
+        if (tagLen != macLen) {
+            return false;
+        }
+        SHA3SHAKE sponge = ConcurrentSHA3.borrow(suffix);
+        try {
+            sponge.absorb(key);
+            return finish(sponge, data, off, len, tag, tagOff, tagLen);
+        } finally {
+            ConcurrentSHA3.release(sponge);
+        }
+    }
+    /**
+     * Verify many KMAC tags in parallel. Each thread works on its own copy of the keyed KMAC.
+     *
+     * @param kmac     the keyed KMAC.
+     * @param messages the messages.
+     * @param tags     the tag of each message.
+     * @return         the indexes of the pairs whose tag is invalid.
+     */
+    public static BitSet verifyAll(KMAC kmac, byte[][] messages, byte[][] tags) {
+        checkPairs(messages.length, tags.length);
+        ThreadLocal<KMAC> local = ThreadLocal.withInitial(kmac::copy);
+        return failures(messages.length, i -> local.get().verify(messages[i], 0, messages[i].length,
+                                                                 tags[i], 0, tags[i].length));
+    }
+    /**
+     * Verify many KMAC tags stored in one buffer, e.g. a block of records, in parallel.
+     *
+     * @param kmac       the keyed KMAC.
+     * @param buf        the buffer.
+     * @param offsets    the index of each message.
+     * @param lengths    the length of each message.
+     * @param tagOffsets the index of each tag.
+     * @param tagLen     the tag length.
+     * @return           the indexes of the records whose tag is invalid.
+     */
+    public static BitSet verifyAll(KMAC kmac, byte[] buf, int[] offsets, int[] lengths, int[] tagOffsets, int tagLen) {
+        checkPairs(offsets.length, lengths.length);
+        checkPairs(offsets.length, tagOffsets.length);
+        ThreadLocal<KMAC> local = ThreadLocal.withInitial(kmac::copy);
+        return failures(offsets.length, i -> local.get().verify(buf, offsets[i], lengths[i],
+                                                                buf, tagOffsets[i], tagLen));
+    }
+    /**
+     * Verify many keyed SHAKE MACs in parallel. The key is absorbed once, and each message
+     * starts from a copy of that state.
+     *
+     * @param suffix   security level (either 128 or 256)
+     * @param key      the key.
+     * @param messages the messages.
+     * @param tags     the tag of each message.
+     * @param macLen   the MAC length the protocol expects, at least MIN_TAG_LEN.
+     * @return         the indexes of the pairs whose tag is invalid or not macLen bytes long.
+     * @throws IllegalArgumentException if macLen is below MIN_TAG_LEN.
+     */
+    public static BitSet verifyAll(int suffix, byte[] key, byte[][] messages, byte[][] tags, int macLen) {
+        checkPairs(messages.length, tags.length);
+        checkMacLength(macLen);
+        SHA3SHAKE keyed = new SHA3SHAKE();
+        keyed.init(suffix);
+        keyed.absorb(key);
+        ThreadLocal<SHA3SHAKE> local = ThreadLocal.withInitial(keyed::copy);
+        return failures(messages.length, i -> {
+            if (tags[i].length != macLen) {
+                return false;
+            }
+            SHA3SHAKE sponge = local.get();
+            sponge.copyFrom(keyed);
+            return finish(sponge, messages[i], 0, messages[i].length, tags[i], 0, tags[i].length);
+        });
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Absorb the message into a keyed sponge, squeeze the expected tag and compare.
+     *
+     * @param sponge the sponge, with the key absorbed.
+     * @param data   the buffer holding the message.
+     * @param off    the index of the first message byte.
+     * @param len    the message length.
+     * @param tag    the buffer holding the tag.
+     * @param tagOff the index of the first tag byte.
+     * @param tagLen the tag length.
+     * @return       true if the tag is valid.
+     */
+    private static boolean finish(SHA3SHAKE sponge, byte[] data, int off, int len,
+                                  byte[] tag, int tagOff, int tagLen) {
+        byte[] expected = scratch(tagLen);
+        sponge.absorb(data, off, len);
+        sponge.squeeze(expected, 0, tagLen);
+        return isEqual(expected, 0, tag, tagOff, tagLen);
+    }
+    /**
+     * Run a check for every index on the fork-join pool and collect the failures.
+     *
+     * @param n     the number of checks.
+     * @param check the check of one index.
+     * @return      the indexes that failed.
+     */
+    private static BitSet failures(int n, IntPredicate check) {
+        boolean[] failed = new boolean[n];
+        IntStream.range(0, n).parallel().forEach(i -> failed[i] = !check.test(i));
+        BitSet bad = new BitSet(n);
+        for (int i = 0; i < n; i++) {
+            if (failed[i]) {
+                bad.set(i);
+            }
+        }
+        return bad;
+    }
+    /**
+     * The calling thread's scratch buffer, grown if needed.
+     *
+     * @param len the length needed.
+     * @return    a buffer of at least len bytes.
+     */
+    private static byte[] scratch(int len) {
+        byte[] buf = SCRATCH.get();
+        if (buf.length < len) {
+            buf = new byte[len];
+            SCRATCH.set(buf);
+        }
+        return buf;
+    }
+    /**
+     * Check that an expected MAC length is long enough to mean something.
+     *
+     * @param macLen the expected MAC length in bytes.
+     */
+    private static void checkMacLength(int macLen) {
+        if (macLen < MIN_TAG_LEN) {
+            throw new IllegalArgumentException("MAC length must be at least " + MIN_TAG_LEN + " bytes.");
+        }
+    }
+    /**
+     * Check that two parallel arrays have the same length.
+     *
+     * @param a the first length.
+     * @param b the second length.
+     */
+    private static void checkPairs(int a, int b) {
+        if (a != b) {
+            throw new IllegalArgumentException("Every message needs exactly one tag.");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.stream.IntStream;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Shared plumbing for the tree hashing modes (ParallelHash, KangarooTwelve).
+ * Inputs are read one window at a time; the leaves of a window are hashed in parallel on the
+ * common fork-join pool and their chaining values are handed back in leaf order.
+ */
+final class TreeHashing {
+//********************************* Constants *********************************\\
+    /**
+     * Approximate number of input bytes handled per window.
+     */
+    static final int WINDOW = 1 << 26;
+    /**
+     * One leaf sponge per worker thread.
+     */
+    private static final ThreadLocal<SHA3SHAKE> SPONGES = ThreadLocal.withInitial(SHA3SHAKE::new);
+    /**
+     * Private constructor.
+     */
+    private TreeHashing() {}
+    /**
+     * Random-access view of the input of a tree hash.
+     */
+    interface Body {
+        /**
+         * The input size.
+         *
+         * @return the size in bytes.
+         */
+        long size();
+        /**
+         * A view of part of the input.
+         *
+         * @param pos the offset of the first byte.
+         * @param len the number of bytes.
+         * @return    a buffer positioned at 0 with len bytes remaining.
+         * @throws IOException if the input cannot be read.
+         */
+        ByteBuffer slice(long pos, int len) throws IOException;
+    }
+    /**
+     * An in-memory input.
+     *
+     * @param data the input bytes.
+     * @return     the input view.
+     */
+    static Body of(byte[] data) {
+        return new Body() {
+            @Override
+            public long size() {
+                return data.length;
+            }
+            @Override
+            public ByteBuffer slice(long pos, int len) {
+                return ByteBuffer.wrap(data, (int) pos, len).slice();
+            }
+        };
+    }
+    /**
+     * A file input, memory-mapped one window at a time.
+     *
+     * @param channel the open file.
+     * @return        the input view.
+     * @throws IOException if the size cannot be read.
+     */
+    static Body of(FileChannel channel) throws IOException {
+        long size = channel.size();
+        return new Body() {
+            @Override
+            public long size() {
+                return size;
+            }
+            @Override
+            public ByteBuffer slice(long pos, int len) throws IOException {
+                return channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            }
+        };
+    }
+    /**
+     * Number of leaves to read per window, so a window stays near WINDOW bytes.
+     *
+     * @param chunk the leaf size in bytes.
+     * @return      the number of leaves per window (at least 1).
+     */
+    static int leavesPerWindow(int chunk) {
+        return Math.max(1, WINDOW / chunk);
+    }
+    /**
+     * Hash the leaves of a window in parallel.
+     * Leaf i covers bytes [i * chunk, (i + 1) * chunk) of the window; the last leaf may be short.
+     *
+     * @param window the window.
+     * @param chunk  the leaf size in bytes.
+     * @param count  the number of leaves in the window.
+     * @param suffix the leaf sponge's security level.
+     * @param rounds the leaf sponge's number of rounds.
+     * @param domain the leaf sponge's domain separation byte.
+     * @param cvs    the output, count * cvLen bytes of chaining values.
+     * @param cvLen  the chaining value length in bytes.
+     */
+    static void leaves(ByteBuffer window, int chunk, int count, int suffix, int rounds, long domain,
+                       byte[] cvs, int cvLen) {
+        IntStream.range(0, count).parallel().forEach(i -> {
+            int pos = i * chunk;
+            int len = Math.min(chunk, window.limit() - pos);
+            SHA3SHAKE sponge = SPONGES.get();
+            sponge.init(suffix, rounds, domain);
+            sponge.absorb(window.slice(pos, len));
+            sponge.squeeze(cvs, i * cvLen, cvLen);
+        });
+    }
+    /**
+     * Hash the leaves of a window in parallel with SHA3-256, each after a one-byte prefix.
+     * Leaf i covers bytes [i * chunk, (i + 1) * chunk) of the window; the last leaf may be short.
+     *
+     * @param window the window.
+     * @param chunk  the leaf size in bytes.
+     * @param count  the number of leaves in the window.
+     * @param prefix the byte absorbed before each leaf (domain separation).
+     * @param out    the output, 32 bytes per leaf.
+     * @param outOff where the digest of leaf 0 goes.
+     */
+    static void sha3Leaves(ByteBuffer window, int chunk, int count, byte prefix, byte[] out, int outOff) {
+        IntStream.range(0, count).parallel().forEach(i -> {
+            int pos = i * chunk;
+            int len = Math.min(chunk, window.limit() - pos);
+            SHA3SHAKE sponge = SPONGES.get();
+            sponge.init(256);
+            sponge.absorb(new byte[] {prefix});
+            sponge.absorb(window.slice(pos, len));
+            sponge.digest(ByteBuffer.wrap(out, outOff + 32 * i, 32));
+        });
+    }
+}
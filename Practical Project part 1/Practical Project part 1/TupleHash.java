@@ -0,0 +1,141 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * TupleHash128/256 and TupleHashXOF128/256 from NIST SP 800-185: a hash of a sequence of byte
+ * strings in which every element is absorbed as encode_string, so ("ab", "c") and ("a", "bc")
+ * hash differently. The cSHAKE prefix is absorbed once per instance; an instance is not
+ * thread-safe, give each thread its own or use copy().
+ */
+public final class TupleHash {
+//********************************* Constants *********************************\\
+    /**
+     * Function-name string for cSHAKE.
+     */
+    private static final byte[] NAME = "TupleHash".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * cSHAKE with the name and customization string absorbed.
+     */
+    private final CSHAKE prefix;
+    /**
+     * Working sponge, restored from the prefix for each tuple.
+     */
+    private final SHA3SHAKE work = new SHA3SHAKE();
+    /**
+     * Constructor: absorb the customization string.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param S      customization string
+     */
+    public TupleHash(int suffix, byte[] S) {
+        this.prefix = new CSHAKE(suffix, NAME, S);
+    }
+    /**
+     * Constructor: share the prefix state of another instance.
+     *
+     * @param other the instance to copy.
+     */
+    private TupleHash(TupleHash other) {
+        this.prefix = other.prefix.copy();
+    }
+    /**
+     * A new instance with the same customization string, e.g. for another thread.
+     *
+     * @return the copy.
+     */
+    public TupleHash copy() {
+        return new TupleHash(this);
+    }
+    /**
+     * Compute TupleHash on a tuple with an output bit length L.
+     *
+     * @param X the tuple
+     * @param L desired output length in bits (must be a multiple of 8)
+     * @return  the output, L / 8 bytes.
+     */
+    public byte[] hash(byte[][] X, int L) {
+        validLength(L);
+        return finish(X, L, new byte[L / 8]);
+    }
+    /**
+     * Compute TupleHashXOF on a tuple with an output bit length L.
+     * Unlike TupleHash, the output length is not bound into the result.
+     *
+     * @param X the tuple
+     * @param L desired output length in bits (must be a multiple of 8)
+     * @return  the output, L / 8 bytes.
+     */
+    public byte[] xof(byte[][] X, int L) {
+        validLength(L);
+        return finish(X, 0, new byte[L / 8]);
+    }
+    /**
+     * Compute TupleHash-<128,256> in one call.
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param X      the tuple
+     * @param L      desired output length in bits (must be a multiple of 8)
+     * @param S      customization string
+     * @return       the output, L / 8 bytes.
+     */
+    public static byte[] TupleHash(int suffix, byte[][] X, int L, byte[] S) {
+        validLength(L);
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        CSHAKE.init(sponge, suffix, NAME, S);
+        return absorb(sponge, X, L).squeeze(L / 8);
+    }
+    /**
+     * Check the implementation against the NIST SP 800-185 sample values.
+     *
+     * @return true if every sample matches.
+     */
+    public static boolean selfTest() {
+        HexFormat hex = HexFormat.of();
+        byte[][] X = {hex.parseHex("000102"), hex.parseHex("101112131415")};
+        byte[] S = "My Tuple App".getBytes(StandardCharsets.US_ASCII);
+        return Arrays.equals(TupleHash(128, X, 256, new byte[0]), hex.parseHex(
+                        "c5d8786c1afb9b82111ab34b65b2c0048fa64e6d48e263264ce1707d3ffc8ed1"))
+                && Arrays.equals(new TupleHash(128, S).hash(X, 256), hex.parseHex(
+                        "75cdb20ff4db1154e841d758e24160c54bae86eb8c13e7f5f40eb35588e96dfb"));
+    }
+    //********************************* Helper Methods *********************************\\
+    /**
+     * Absorb a tuple after the prefix and squeeze.
+     *
+     * @param X   the tuple
+     * @param L   the encoded output length in bits (0 for TupleHashXOF)
+     * @param out output buffer
+     * @return    the out buffer.
+     */
+    private byte[] finish(byte[][] X, long L, byte[] out) {
+        return absorb(prefix.init(work), X, L).squeeze(out, 0, out.length);
+    }
+    /**
+     * Absorb every element as encode_string, then right_encode(L).
+     *
+     * @param sponge the sponge, with the prefix absorbed.
+     * @param X      the tuple
+     * @param L      the encoded output length in bits
+     * @return       the sponge.
+     */
+    private static SHA3SHAKE absorb(SHA3SHAKE sponge, byte[][] X, long L) {
+        for (byte[] x : X) {
+            sponge.absorb(SP800185.leftEncode(8L * x.length));
+            sponge.absorb(x);
+        }
+        sponge.absorb(SP800185.rightEncode(L));
+        return sponge;
+    }
+    /**
+     * Check an output length.
+     *
+     * @param L desired output length in bits
+     */
+    private static void validLength(int L) {
+        if (L < 0 || L % 8 != 0) {
+            throw new IllegalArgumentException("Output length must be a non-negative multiple of 8");
+        }
+    }
+}
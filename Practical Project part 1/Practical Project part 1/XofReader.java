@@ -0,0 +1,226 @@
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Lazy reader over the unbounded output of a SHAKE or cSHAKE sponge, for use as a
+ * deterministic random bit generator, a mask generator or a long keystream.
+ * Output is copied straight from the state into caller-supplied buffers; the permutation only
+ * runs when the current rate block is used up, and nothing is squeezed ahead of a read, so
+ * memory stays constant however much output is taken. Every read continues where the last one
+ * stopped, whichever view it goes through. A reader is not thread-safe.
+ */
+public final class XofReader {
+//********************************* Constants *********************************\\
+    /**
+     * Little-endian long view of a byte array.
+     */
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+     * The sponge being squeezed.
+     */
+    private final SHA3SHAKE sponge;
+    /**
+     * Scratch buffer for reads of a single value.
+     */
+    private final byte[] scratch = new byte[Long.BYTES];
+    /**
+     * Number of bytes read so far.
+     */
+    private long position;
+    /**
+     * Constructor: read the output of a sponge. The reader takes the sponge over; it should
+     * not be used directly afterwards.
+     *
+     * @param sponge an initialized SHAKE or cSHAKE sponge, either still absorbing or already squeezing.
+     */
+    public XofReader(SHA3SHAKE sponge) {
+        this.sponge = Objects.requireNonNull(sponge);
+    }
+    /**
+     * Reader over SHAKE-<128,256>(seed).
+     *
+     * @param suffix security level (either 128 or 256)
+     * @param seed   the seed.
+     * @return       the reader.
+     */
+    public static XofReader shake(int suffix, byte[] seed) {
+        SHA3SHAKE sponge = new SHA3SHAKE();
+        sponge.init(suffix);
+        sponge.absorb(seed);
+        return new XofReader(sponge);
+    }
+    /**
+     * Reader over cSHAKE(seed) with a prefix absorbed beforehand.
+     *
+     * @param prefix the cSHAKE function name and customization string.
+     * @param seed   the seed.
+     * @return       the reader.
+     */
+    public static XofReader cshake(CSHAKE prefix, byte[] seed) {
+        SHA3SHAKE sponge = prefix.init(new SHA3SHAKE());
+        sponge.absorb(seed);
+        return new XofReader(sponge);
+    }
+    /**
+     * Fill part of a buffer with the next output bytes.
+     *
+     * @param out the output buffer.
+     * @param off the index of the first byte to fill.
+     * @param len the number of bytes to fill.
+     * @return    the out buffer.
+     */
+    public byte[] read(byte[] out, int off, int len) {
+        sponge.squeeze(out, off, len);
+        position += len;
+        return out;
+    }
+    /**
+     * Fill a whole buffer with the next output bytes.
+     *
+     * @param out the output buffer.
+     * @return    the out buffer.
+     */
+    public byte[] read(byte[] out) {
+        return read(out, 0, out.length);
+    }
+    /**
+     * Fill the remaining space of a buffer with the next output bytes.
+     *
+     * @param dst the output buffer; its position is advanced to its limit.
+     * @return    the dst buffer.
+     */
+    public ByteBuffer read(ByteBuffer dst) {
+        position += dst.remaining();
+        return sponge.squeeze(dst);
+    }
+    /**
+     * Copy out the rest of the current rate block, or the next whole block if it is used up,
+     * so that every call costs at most one permutation.
+     *
+     * @param out the output buffer, with room for at least one rate block after off.
+     * @param off the index of the first byte to fill.
+     * @return    the number of bytes filled.
+     */
+    public int readBlock(byte[] out, int off) {
+        int n = sponge.blockRemaining();
+        read(out, off, n);
+        return n;
+    }
+    /**
+     * XOR the next output bytes into a buffer in place, e.g. to apply a mask or keystream.
+     *
+     * @param buf the buffer.
+     * @param off the index of the first byte.
+     * @param len the number of bytes.
+     */
+    public void xor(byte[] buf, int off, int len) {
+        sponge.squeezeXor(buf, off, len);
+        position += len;
+    }
+    /**
+     * Discard output bytes without copying them; only the permutations are paid for.
+     *
+     * @param len the number of bytes to skip.
+     */
+    public void skip(long len) {
+        sponge.skip(len);
+        position += len;
+    }
+    /**
+     * The next 8 output bytes as a little-endian value.
+     *
+     * @return the value.
+     */
+    public long nextLong() {
+        read(scratch, 0, Long.BYTES);
+        return (long) LONG.get(scratch, 0);
+    }
+    /**
+     * Number of bytes read or skipped so far.
+     *
+     * @return the offset into the output stream.
+     */
+    public long position() {
+        return position;
+    }
+    /**
+     * An InputStream view of the output. The stream never ends.
+     *
+     * @return the stream.
+     */
+    public InputStream asInputStream() {
+        return new InputStream() {
+            /**
+             * Read one output byte.
+             *
+             * @return the next output byte, 0 to 255.
+             */
+            @Override
+            public int read() {
+                XofReader.this.read(scratch, 0, 1);
+                return scratch[0] & 0xFF;
+            }
+            /**
+             * Read a run of output bytes.
+             *
+             * @param b   the output buffer.
+             * @param off the index of the first byte to fill.
+             * @param len the number of bytes to fill.
+             * @return    len, as the output never runs out.
+             */
+            @Override
+            public int read(byte[] b, int off, int len) {
+                XofReader.this.read(b, off, len);
+                return len;
+            }
+            /**
+             * Skip output bytes without copying them.
+             *
+             * @param n the number of bytes to skip.
+             * @return  n, or 0 if n is negative.
+             */
+            @Override
+            public long skip(long n) {
+                if (n <= 0) {
+                    return 0;
+                }
+                XofReader.this.skip(n);
+                return n;
+            }
+        };
+    }
+    /**
+     * A RandomGenerator view of the output, deterministic for a given seed. Every value is
+     * drawn from the same output stream as reads, so interleaving the two is reproducible.
+     *
+     * @return the generator.
+     */
+    public RandomGenerator asRandomGenerator() {
+        return new RandomGenerator() {
+            /**
+             * The next 8 output bytes as a little-endian value.
+             *
+             * @return the value.
+             */
+            @Override
+            public long nextLong() {
+                return XofReader.this.nextLong();
+            }
+            /**
+             * Fill an array straight from the output, rather than 8 bytes at a time.
+             *
+             * @param bytes the array to fill.
+             */
+            @Override
+            public void nextBytes(byte[] bytes) {
+                read(bytes, 0, bytes.length);
+            }
+        };
+    }
+}
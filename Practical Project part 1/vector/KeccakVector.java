@@ -0,0 +1,174 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+import static jdk.incubator.vector.VectorOperators.AND_NOT;
+import static jdk.incubator.vector.VectorOperators.ROL;
+import static jdk.incubator.vector.VectorOperators.XOR;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * SIMD multi-buffer Keccak-f[1600] permutation on the incubating Vector API.
+ * Each lane of the interleaved states is one LongVector holding that lane of every state, and
+ * every step of a round is written out lane by lane as in KeccakUnrolled, so one instruction
+ * advances all states at once: 8 states per permutation with AVX-512, 4 with AVX2.
+ * The class needs --add-modules jdk.incubator.vector to compile and to load, so it lives in its
+ * own source root and is built in a separate step, after the main sources (see the README).
+ * KeccakEngines loads it reflectively, so without it or its module the scalar
+ * KeccakInterleaved is used instead.
+ * An instance holds no state of its own and is thread-safe.
+ */
+public final class KeccakVector implements KeccakMultiEngine {
+    /**
+     * Vector shape, one long per state.
+     */
+    private final VectorSpecies<Long> species;
+    /**
+     * Constructor: as many states as the widest vector this CPU supports holds longs.
+     */
+    public KeccakVector() {
+        this(LongVector.SPECIES_PREFERRED);
+    }
+    /**
+     * Constructor with an explicit vector shape.
+     *
+     * @param species the vector shape; its length is the number of states permuted together.
+     */
+    public KeccakVector(VectorSpecies<Long> species) {
+        this.species = species;
+    }
+    /**
+     * The number of states permuted together.
+     *
+     * @return the vector length in longs.
+     */
+    @Override
+    public int ways() {
+        return species.length();
+    }
+    /**
+     * The Keccakf permutation on every state, with Rho and Pi merged into a single pass.
+     *
+     * @param states 25 * ways() lanes, lane i of state k at index i * ways() + k.
+     */
+    @Override
+    public void permute(long[] states) {
+        final VectorSpecies<Long> species = this.species;
+        final int n = species.length();
+        LongVector a00 = LongVector.fromArray(species, states, 0);
+        LongVector a01 = LongVector.fromArray(species, states, n);
+        LongVector a02 = LongVector.fromArray(species, states, 2 * n);
+        LongVector a03 = LongVector.fromArray(species, states, 3 * n);
+        LongVector a04 = LongVector.fromArray(species, states, 4 * n);
+        LongVector a05 = LongVector.fromArray(species, states, 5 * n);
+        LongVector a06 = LongVector.fromArray(species, states, 6 * n);
+        LongVector a07 = LongVector.fromArray(species, states, 7 * n);
+        LongVector a08 = LongVector.fromArray(species, states, 8 * n);
+        LongVector a09 = LongVector.fromArray(species, states, 9 * n);
+        LongVector a10 = LongVector.fromArray(species, states, 10 * n);
+        LongVector a11 = LongVector.fromArray(species, states, 11 * n);
+        LongVector a12 = LongVector.fromArray(species, states, 12 * n);
+        LongVector a13 = LongVector.fromArray(species, states, 13 * n);
+        LongVector a14 = LongVector.fromArray(species, states, 14 * n);
+        LongVector a15 = LongVector.fromArray(species, states, 15 * n);
+        LongVector a16 = LongVector.fromArray(species, states, 16 * n);
+        LongVector a17 = LongVector.fromArray(species, states, 17 * n);
+        LongVector a18 = LongVector.fromArray(species, states, 18 * n);
+        LongVector a19 = LongVector.fromArray(species, states, 19 * n);
+        LongVector a20 = LongVector.fromArray(species, states, 20 * n);
+        LongVector a21 = LongVector.fromArray(species, states, 21 * n);
+        LongVector a22 = LongVector.fromArray(species, states, 22 * n);
+        LongVector a23 = LongVector.fromArray(species, states, 23 * n);
+        LongVector a24 = LongVector.fromArray(species, states, 24 * n);
+        for (int r = 0; r < SHA3SHAKE.KECCAKF_ROUNDS; r++) {
+            // Theta.
+            LongVector c0 = a00.lanewise(XOR, a05).lanewise(XOR, a10).lanewise(XOR, a15).lanewise(XOR, a20);
+            LongVector c1 = a01.lanewise(XOR, a06).lanewise(XOR, a11).lanewise(XOR, a16).lanewise(XOR, a21);
+            LongVector c2 = a02.lanewise(XOR, a07).lanewise(XOR, a12).lanewise(XOR, a17).lanewise(XOR, a22);
+            LongVector c3 = a03.lanewise(XOR, a08).lanewise(XOR, a13).lanewise(XOR, a18).lanewise(XOR, a23);
+            LongVector c4 = a04.lanewise(XOR, a09).lanewise(XOR, a14).lanewise(XOR, a19).lanewise(XOR, a24);
+            LongVector d0 = c4.lanewise(XOR, c1.lanewise(ROL, 1));
+            LongVector d1 = c0.lanewise(XOR, c2.lanewise(ROL, 1));
+            LongVector d2 = c1.lanewise(XOR, c3.lanewise(ROL, 1));
+            LongVector d3 = c2.lanewise(XOR, c4.lanewise(ROL, 1));
+            LongVector d4 = c3.lanewise(XOR, c0.lanewise(ROL, 1));
+            // Rho and Pi.
+            LongVector b00 = a00.lanewise(XOR, d0);
+            LongVector b01 = a06.lanewise(XOR, d1).lanewise(ROL, 44);
+            LongVector b02 = a12.lanewise(XOR, d2).lanewise(ROL, 43);
+            LongVector b03 = a18.lanewise(XOR, d3).lanewise(ROL, 21);
+            LongVector b04 = a24.lanewise(XOR, d4).lanewise(ROL, 14);
+            LongVector b05 = a03.lanewise(XOR, d3).lanewise(ROL, 28);
+            LongVector b06 = a09.lanewise(XOR, d4).lanewise(ROL, 20);
+            LongVector b07 = a10.lanewise(XOR, d0).lanewise(ROL, 3);
+            LongVector b08 = a16.lanewise(XOR, d1).lanewise(ROL, 45);
+            LongVector b09 = a22.lanewise(XOR, d2).lanewise(ROL, 61);
+            LongVector b10 = a01.lanewise(XOR, d1).lanewise(ROL, 1);
+            LongVector b11 = a07.lanewise(XOR, d2).lanewise(ROL, 6);
+            LongVector b12 = a13.lanewise(XOR, d3).lanewise(ROL, 25);
+            LongVector b13 = a19.lanewise(XOR, d4).lanewise(ROL, 8);
+            LongVector b14 = a20.lanewise(XOR, d0).lanewise(ROL, 18);
+            LongVector b15 = a04.lanewise(XOR, d4).lanewise(ROL, 27);
+            LongVector b16 = a05.lanewise(XOR, d0).lanewise(ROL, 36);
+            LongVector b17 = a11.lanewise(XOR, d1).lanewise(ROL, 10);
+            LongVector b18 = a17.lanewise(XOR, d2).lanewise(ROL, 15);
+            LongVector b19 = a23.lanewise(XOR, d3).lanewise(ROL, 56);
+            LongVector b20 = a02.lanewise(XOR, d2).lanewise(ROL, 62);
+            LongVector b21 = a08.lanewise(XOR, d3).lanewise(ROL, 55);
+            LongVector b22 = a14.lanewise(XOR, d4).lanewise(ROL, 39);
+            LongVector b23 = a15.lanewise(XOR, d0).lanewise(ROL, 41);
+            LongVector b24 = a21.lanewise(XOR, d1).lanewise(ROL, 2);
+            // Chi.
+            a00 = b00.lanewise(XOR, b02.lanewise(AND_NOT, b01));
+            a01 = b01.lanewise(XOR, b03.lanewise(AND_NOT, b02));
+            a02 = b02.lanewise(XOR, b04.lanewise(AND_NOT, b03));
+            a03 = b03.lanewise(XOR, b00.lanewise(AND_NOT, b04));
+            a04 = b04.lanewise(XOR, b01.lanewise(AND_NOT, b00));
+            a05 = b05.lanewise(XOR, b07.lanewise(AND_NOT, b06));
+            a06 = b06.lanewise(XOR, b08.lanewise(AND_NOT, b07));
+            a07 = b07.lanewise(XOR, b09.lanewise(AND_NOT, b08));
+            a08 = b08.lanewise(XOR, b05.lanewise(AND_NOT, b09));
+            a09 = b09.lanewise(XOR, b06.lanewise(AND_NOT, b05));
+            a10 = b10.lanewise(XOR, b12.lanewise(AND_NOT, b11));
+            a11 = b11.lanewise(XOR, b13.lanewise(AND_NOT, b12));
+            a12 = b12.lanewise(XOR, b14.lanewise(AND_NOT, b13));
+            a13 = b13.lanewise(XOR, b10.lanewise(AND_NOT, b14));
+            a14 = b14.lanewise(XOR, b11.lanewise(AND_NOT, b10));
+            a15 = b15.lanewise(XOR, b17.lanewise(AND_NOT, b16));
+            a16 = b16.lanewise(XOR, b18.lanewise(AND_NOT, b17));
+            a17 = b17.lanewise(XOR, b19.lanewise(AND_NOT, b18));
+            a18 = b18.lanewise(XOR, b15.lanewise(AND_NOT, b19));
+            a19 = b19.lanewise(XOR, b16.lanewise(AND_NOT, b15));
+            a20 = b20.lanewise(XOR, b22.lanewise(AND_NOT, b21));
+            a21 = b21.lanewise(XOR, b23.lanewise(AND_NOT, b22));
+            a22 = b22.lanewise(XOR, b24.lanewise(AND_NOT, b23));
+            a23 = b23.lanewise(XOR, b20.lanewise(AND_NOT, b24));
+            a24 = b24.lanewise(XOR, b21.lanewise(AND_NOT, b20));
+            // Iota.
+            a00 = a00.lanewise(XOR, SHA3SHAKE.KECCAKF_RNDC[r]);
+        }
+        a00.intoArray(states, 0);
+        a01.intoArray(states, n);
+        a02.intoArray(states, 2 * n);
+        a03.intoArray(states, 3 * n);
+        a04.intoArray(states, 4 * n);
+        a05.intoArray(states, 5 * n);
+        a06.intoArray(states, 6 * n);
+        a07.intoArray(states, 7 * n);
+        a08.intoArray(states, 8 * n);
+        a09.intoArray(states, 9 * n);
+        a10.intoArray(states, 10 * n);
+        a11.intoArray(states, 11 * n);
+        a12.intoArray(states, 12 * n);
+        a13.intoArray(states, 13 * n);
+        a14.intoArray(states, 14 * n);
+        a15.intoArray(states, 15 * n);
+        a16.intoArray(states, 16 * n);
+        a17.intoArray(states, 17 * n);
+        a18.intoArray(states, 18 * n);
+        a19.intoArray(states, 19 * n);
+        a20.intoArray(states, 20 * n);
+        a21.intoArray(states, 21 * n);
+        a22.intoArray(states, 22 * n);
+        a23.intoArray(states, 23 * n);
+        a24.intoArray(states, 24 * n);
+    }
+}
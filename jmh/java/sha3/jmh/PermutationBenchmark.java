@@ -0,0 +1,58 @@
+package sha3.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Keccak-f[1600] engines, one permutation call per operation. keccakF.interleaved permutes
+ * KeccakEngines.SCALAR_WAYS states per call; divide its time by that for the cost per state.
+ * keccakF.vector (KeccakVector, one state per SIMD lane) needs the jar built with
+ * mvn -B -Pjmh,vector package and is only run when asked for: -p workload=keccakF.vector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PermutationBenchmark {
+    /**
+     * The engine.
+     */
+    @Param({"keccakF.unrolled", "keccakF.reference", "keccakF.interleaved"})
+    public String workload;
+    /**
+     * The workload under test.
+     */
+    private IntSupplier op;
+    /**
+     * Build the workload.
+     *
+     * @throws ReflectiveOperationException if it cannot be built.
+     */
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        op = Workloads.create(workload, 0);
+    }
+    /**
+     * One permutation.
+     *
+     * @return a lane of the state, consumed by JMH.
+     */
+    @Benchmark
+    public int permute() {
+        return op.getAsInt();
+    }
+}
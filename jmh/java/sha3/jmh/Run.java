@@ -0,0 +1,32 @@
+package sha3.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Entry point of target/benchmarks.jar: the usual JMH command line, with the GC profiler
+ * always on so every result carries its allocation rate (gc.alloc.rate.norm, bytes per op).
+ */
+public final class Run {
+    /**
+     * Private constructor.
+     */
+    private Run() {}
+    /**
+     * Main method
+     * @param args  JMH options, e.g. a benchmark regex, -f, -wi, -i, -p size=4096.
+     * @throws CommandLineOptionException if the options are invalid.
+     * @throws RunnerException            if a benchmark fails.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package sha3.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Squeezing SHAKE output of 16 B to 64 MB after absorbing 64 bytes. Scores are operations
+ * per second; multiply by size for bytes per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SqueezeBenchmark {
+    /**
+     * The operation (see BenchmarkWorkloads.create).
+     */
+    @Param({"squeeze.shake128", "squeeze.shake256"})
+    public String workload;
+    /**
+     * The output size in bytes.
+     */
+    @Param({"16", "256", "4096", "65536", "1048576", "16777216", "67108864"})
+    public int size;
+    /**
+     * The workload under test.
+     */
+    private IntSupplier op;
+    /**
+     * Build the workload and its input.
+     *
+     * @throws ReflectiveOperationException if it cannot be built.
+     */
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        op = Workloads.create(workload, size);
+    }
+    /**
+     * One operation on one message.
+     *
+     * @return a value derived from the result, consumed by JMH.
+     */
+    @Benchmark
+    public int run() {
+        return op.getAsInt();
+    }
+}
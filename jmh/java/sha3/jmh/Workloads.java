@@ -0,0 +1,28 @@
+package sha3.jmh;
+
+import java.util.function.IntSupplier;
+/**
+ * @author rick_adams.
+ * @version 2024 AU.
+ * Bridge to BenchmarkWorkloads in the default package, which code in a named package can
+ * only reach reflectively. Called once per trial from @Setup, never on the measured path.
+ */
+final class Workloads {
+    /**
+     * Private constructor.
+     */
+    private Workloads() {}
+    /**
+     * Build a workload.
+     *
+     * @param name the workload name (see BenchmarkWorkloads.create).
+     * @param size the input size in bytes.
+     * @return     the workload.
+     * @throws ReflectiveOperationException if BenchmarkWorkloads is missing or rejects the name.
+     */
+    static IntSupplier create(String name, int size) throws ReflectiveOperationException {
+        return (IntSupplier) Class.forName("BenchmarkWorkloads")
+                .getMethod("create", String.class, int.class)
+                .invoke(null, name, size);
+    }
+}